@@ -0,0 +1,60 @@
+package xin.vanilla.banira.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import xin.vanilla.banira.common.data.CallbackList;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 事件总线回调分发的基准测试
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class CallbackListBenchmark {
+
+    @Param({"1", "8", "64"})
+    public int listeners;
+
+    /**
+     * 是否开启性能分析
+     */
+    @Param({"false", "true"})
+    public boolean profiling;
+
+    /**
+     * 慢回调警告阈值(纳秒), 0 表示不检查
+     */
+    @Param({"0", "5000000"})
+    public long slowListenerNanos;
+
+    private CallbackList<Object> callbacks;
+    private Object payload;
+    private Blackhole blackhole;
+
+    @Setup(Level.Trial)
+    public void setup(Blackhole blackhole) {
+        this.blackhole = blackhole;
+        this.payload = new Object();
+        this.callbacks = new CallbackList<>("benchmark");
+        for (int i = 0; i < listeners; i++) {
+            callbacks.register(o -> this.blackhole.consume(o));
+        }
+        CallbackList.setProfiling(profiling);
+        CallbackList.setSlowListenerNanos(slowListenerNanos);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CallbackList.setProfiling(false);
+    }
+
+    @Benchmark
+    public boolean dispatch() {
+        return callbacks.dispatch(payload);
+    }
+}
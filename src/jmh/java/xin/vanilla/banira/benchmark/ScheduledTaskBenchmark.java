@@ -0,0 +1,78 @@
+package xin.vanilla.banira.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import xin.vanilla.banira.common.data.ScheduledTask;
+import xin.vanilla.banira.common.data.TimingWheel;
+
+import java.util.PriorityQueue;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 计划任务排序的基准测试, 对比优先队列与时间轮
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ScheduledTaskBenchmark {
+
+    @Param({"1000", "100000"})
+    public int tasks;
+
+    @Param({"1200"})
+    public int maxDelay;
+
+    private long[] executeTicks;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        executeTicks = new long[tasks];
+        for (int i = 0; i < tasks; i++) {
+            executeTicks[i] = 1 + random.nextInt(maxDelay);
+        }
+    }
+
+    /**
+     * 以 {@link ScheduledTask#compareTo} 排序的优先队列入队并按序出队
+     */
+    @Benchmark
+    public int priorityQueue() {
+        PriorityQueue<ScheduledTask> queue = new PriorityQueue<>(tasks);
+        for (long executeTick : executeTicks) {
+            queue.offer(ScheduledTask.server(executeTick, null));
+        }
+        int polled = 0;
+        for (long tick = 0; tick <= maxDelay; tick++) {
+            ScheduledTask task;
+            while ((task = queue.peek()) != null && task.executeTick() <= tick) {
+                queue.poll();
+                polled++;
+            }
+        }
+        return polled;
+    }
+
+    /**
+     * 时间轮入队并逐 tick 取出到期任务
+     */
+    @Benchmark
+    public int timingWheel() {
+        TimingWheel wheel = new TimingWheel();
+        wheel.advance(0);
+        for (long executeTick : executeTicks) {
+            wheel.add(ScheduledTask.server(executeTick, null));
+        }
+        int polled = 0;
+        for (long tick = 0; tick <= maxDelay; tick++) {
+            wheel.advance(tick);
+            while (wheel.pollDue() != null) {
+                polled++;
+            }
+        }
+        return polled;
+    }
+}
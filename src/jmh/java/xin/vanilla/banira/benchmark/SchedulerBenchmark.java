@@ -0,0 +1,84 @@
+package xin.vanilla.banira.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import xin.vanilla.banira.common.api.ITickSource;
+import xin.vanilla.banira.common.data.SchedulerLane;
+import xin.vanilla.banira.common.enums.EnumScheduleMode;
+import xin.vanilla.banira.common.enums.EnumTaskPriority;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 计划任务提交与执行的基准测试
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class SchedulerBenchmark {
+
+    /**
+     * 同时等待的任务数
+     */
+    @Param({"1000", "100000"})
+    public int tasks;
+
+    /**
+     * 任务延迟的最大 tick 数
+     */
+    @Param({"20", "1200"})
+    public int maxDelay;
+
+    private long tick;
+    private final ITickSource tickSource = () -> tick;
+    private int[] delays;
+    private SchedulerLane repeatingLane;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        delays = new int[tasks];
+        for (int i = 0; i < tasks; i++) {
+            delays[i] = 1 + random.nextInt(maxDelay);
+        }
+        // 稳态: 所有任务按各自周期重复执行
+        tick = 0;
+        repeatingLane = new SchedulerLane(false);
+        for (int i = 0; i < tasks; i++) {
+            repeatingLane.scheduleRepeating(tickSource, delays[i], EnumScheduleMode.FIXED_RATE, delays[i], EnumTaskPriority.NORMAL, () -> {
+            });
+        }
+    }
+
+    /**
+     * 提交全部任务并逐 tick 执行直至清空
+     */
+    @Benchmark
+    public void scheduleAndDrain(Blackhole blackhole) {
+        SchedulerLane lane = new SchedulerLane(false);
+        long start = tick;
+        int[] counter = new int[1];
+        Runnable action = () -> counter[0]++;
+        for (int i = 0; i < tasks; i++) {
+            lane.schedule(tickSource, delays[i], EnumTaskPriority.NORMAL, action);
+        }
+        long end = start + maxDelay;
+        for (long t = start; t <= end; t++) {
+            lane.run(t);
+        }
+        tick = end + 1;
+        blackhole.consume(counter[0]);
+    }
+
+    /**
+     * 稳态下推进一个 tick 的耗时
+     */
+    @Benchmark
+    public void steadyTick() {
+        repeatingLane.run(++tick);
+    }
+}
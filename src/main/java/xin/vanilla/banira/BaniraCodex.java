@@ -13,11 +13,14 @@ import org.apache.logging.log4j.Logger;
 import xin.vanilla.banira.client.util.TextureUtils;
 import xin.vanilla.banira.common.api.ResourceFactory;
 import xin.vanilla.banira.common.data.KeyValue;
+import xin.vanilla.banira.common.network.PacketBatcher;
 import xin.vanilla.banira.common.player.PlayerDataManager;
 import xin.vanilla.banira.common.util.*;
 import xin.vanilla.banira.internal.config.CustomConfig;
 import xin.vanilla.banira.internal.network.NetworkInit;
 
+import java.util.concurrent.TimeUnit;
+
 @Mod(BaniraCodex.MODID)
 @Accessors(fluent = true)
 public class BaniraCodex {
@@ -56,6 +59,7 @@ public class BaniraCodex {
         MinecraftForge.EVENT_BUS.register(this);
         MinecraftForge.EVENT_BUS.register(BaniraScheduler.class);
         MinecraftForge.EVENT_BUS.register(BaniraEventBus.class);
+        MinecraftForge.EVENT_BUS.register(PacketBatcher.class);
         // 注册网络通道
         NetworkInit.register();
 
@@ -70,6 +74,9 @@ public class BaniraCodex {
     }
 
     private void registerBaniraEvent() {
+        playerDataManager.setWriteBehind(true);
+        // 在线玩家登录时固定, 只淘汰离线玩家的缓存
+        playerDataManager.setMaxCachedPlayers(512);
         BaniraEventBus.registerServerStarting(server ->
                 serverInstance().setKey(server).setValue(true)
         );
@@ -82,9 +89,26 @@ public class BaniraCodex {
         BaniraEventBus.registerServerStopping(server ->
                 serverInstance().setValue(false)
         );
+        BaniraEventBus.registerPlayerLoggedIn(player ->
+                playerDataManager.pin(PlayerUtils.getPlayerUUID(player))
+        );
+        BaniraEventBus.registerPlayerLoggedOut(player ->
+                playerDataManager.unpin(PlayerUtils.getPlayerUUID(player))
+        );
         BaniraEventBus.registerPlayerSave(player ->
                 playerDataManager.saveToDisk(PlayerUtils.getPlayerUUID(player))
         );
+        BaniraEventBus.registerServerStopped(server -> {
+            // 关闭所有实例的存储, 单人游戏中再打开其他存档时不会沿用本存档的文件
+            for (PlayerDataManager manager : PlayerDataManager.listInstances().values()) {
+                if (!manager.close()) {
+                    LOGGER.warn("Player data writes of {} did not finish within {} seconds after server stopped", manager.getStorageDirectory(), PlayerDataManager.DEFAULT_FLUSH_TIMEOUT_SECONDS);
+                }
+            }
+            if (!CustomConfig.flushCustomConfig(PlayerDataManager.DEFAULT_FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                LOGGER.warn("Custom config save did not finish within {} seconds after server stopped", PlayerDataManager.DEFAULT_FLUSH_TIMEOUT_SECONDS);
+            }
+        });
 
         if (FMLEnvironment.dist.isClient()) {
             BaniraEventBus.registerPlayerLoggedOut(player ->
@@ -0,0 +1,151 @@
+package xin.vanilla.banira.client.util;
+
+import io.netty.buffer.Unpooled;
+import net.minecraft.client.Minecraft;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.server.integrated.IntegratedServer;
+import net.minecraftforge.api.distmarker.Dist;
+import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.fml.loading.FMLPaths;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import xin.vanilla.banira.BaniraCodex;
+import xin.vanilla.banira.common.util.BaniraScheduler;
+import xin.vanilla.banira.common.util.StringUtils;
+import xin.vanilla.banira.internal.network.data.AdvancementData;
+import xin.vanilla.banira.internal.network.data.AdvancementDigest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 客户端进度数据磁盘缓存, 按服务器分别保存最近一次同步的进度集合
+ */
+@OnlyIn(Dist.CLIENT)
+public final class AdvancementCache {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final int VERSION = 1;
+
+    private AdvancementCache() {
+    }
+
+    /**
+     * 当前连接的服务器标识, 未连接时返回空字符串
+     */
+    public static String getServerKey() {
+        IntegratedServer integrated = Minecraft.getInstance().getSingleplayerServer();
+        if (integrated != null) {
+            return "local/" + integrated.getWorldData().getLevelName();
+        }
+        String ip = MinecraftUtils.getServerIp();
+        return StringUtils.isNullOrEmpty(ip) ? "" : "remote/" + ip;
+    }
+
+    private static Path getCacheFile(String serverKey) {
+        String name = UUID.nameUUIDFromBytes(serverKey.getBytes(StandardCharsets.UTF_8)).toString();
+        return FMLPaths.GAMEDIR.get().resolve(BaniraCodex.MODID).resolve("advancements").resolve(name + ".bin");
+    }
+
+    /**
+     * 在后台线程读取服务器的进度缓存
+     *
+     * @return 在客户端主线程完成的缓存摘要, 不存在或已损坏时为 {@link AdvancementDigest#EMPTY}
+     */
+    public static CompletableFuture<AdvancementDigest> loadAsync(String serverKey) {
+        CompletableFuture<AdvancementDigest> result = new CompletableFuture<>();
+        if (StringUtils.isNullOrEmpty(serverKey)) {
+            result.complete(AdvancementDigest.EMPTY);
+            return result;
+        }
+        BaniraScheduler.executeAsync(() -> {
+            AdvancementDigest digest = load(serverKey);
+            Minecraft.getInstance().execute(() -> result.complete(digest));
+        });
+        return result;
+    }
+
+    /**
+     * 读取服务器的进度缓存, 需解压并重新计算摘要, 不宜在客户端主线程调用
+     *
+     * @return 缓存摘要, 不存在或已损坏时返回 {@link AdvancementDigest#EMPTY}
+     */
+    public static AdvancementDigest load(String serverKey) {
+        if (StringUtils.isNullOrEmpty(serverKey)) return AdvancementDigest.EMPTY;
+        Path file = getCacheFile(serverKey);
+        if (!Files.isRegularFile(file)) return AdvancementDigest.EMPTY;
+        PacketBuffer buf = new PacketBuffer(Unpooled.buffer());
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(file))) {
+            byte[] chunk = new byte[8192];
+            int read;
+            while ((read = in.read(chunk)) > 0) {
+                buf.writeBytes(chunk, 0, read);
+            }
+            if (buf.readVarInt() != VERSION) return AdvancementDigest.EMPTY;
+            long setHash = buf.readLong();
+            int size = buf.readVarInt();
+            List<AdvancementData> advancements = new ArrayList<>(Math.max(0, size));
+            for (int i = 0; i < size; i++) {
+                advancements.add(AdvancementData.readFromBuffer(buf));
+            }
+            AdvancementDigest digest = AdvancementDigest.of(advancements);
+            // 注册表内容变化(如模组更新)时缓存的哈希不再可信
+            if (digest.setHash() != setHash) {
+                LOGGER.debug("Discarded stale advancement cache of {}", serverKey);
+                return AdvancementDigest.EMPTY;
+            }
+            return digest;
+        } catch (Exception e) {
+            LOGGER.warn("Failed to load advancement cache of {}", serverKey, e);
+            return AdvancementDigest.EMPTY;
+        } finally {
+            buf.release();
+        }
+    }
+
+    /**
+     * 异步保存服务器的进度缓存
+     */
+    public static void save(String serverKey, AdvancementDigest digest) {
+        if (StringUtils.isNullOrEmpty(serverKey) || digest.isEmpty()) return;
+        PacketBuffer buf = new PacketBuffer(Unpooled.buffer());
+        byte[] bytes;
+        try {
+            buf.writeVarInt(VERSION);
+            buf.writeLong(digest.setHash());
+            buf.writeVarInt(digest.size());
+            for (AdvancementData data : digest.advancements()) {
+                data.writeToBuffer(buf);
+            }
+            bytes = new byte[buf.readableBytes()];
+            buf.readBytes(bytes);
+        } finally {
+            buf.release();
+        }
+        Path file = getCacheFile(serverKey);
+        BaniraScheduler.executeAsync(() -> {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            try {
+                Files.createDirectories(file.getParent());
+                try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(temp))) {
+                    out.write(bytes);
+                }
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                LOGGER.debug("Saved advancement cache of {}: {} items", serverKey, digest.size());
+            } catch (IOException e) {
+                LOGGER.warn("Failed to save advancement cache of {}", serverKey, e);
+            }
+        });
+    }
+}
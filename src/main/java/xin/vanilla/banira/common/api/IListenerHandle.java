@@ -0,0 +1,17 @@
+package xin.vanilla.banira.common.api;
+
+/**
+ * 事件监听器注册句柄
+ */
+public interface IListenerHandle {
+
+    /**
+     * 注销监听器
+     *
+     * @return 监听器仍处于注册状态且注销成功
+     */
+    boolean unregister();
+
+    boolean isRegistered();
+
+}
@@ -0,0 +1,47 @@
+package xin.vanilla.banira.common.api;
+
+import net.minecraft.nbt.CompoundNBT;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.UUID;
+
+/**
+ * 玩家数据存储后端</br>
+ * 调用方保证同一玩家的读写不会并发, 不同玩家之间可能并发
+ */
+public interface IPlayerDataStorage {
+
+    /**
+     * 读取玩家数据
+     *
+     * @return 未存储过该玩家时返回 null
+     */
+    @Nullable
+    CompoundNBT read(UUID playerUuid) throws IOException;
+
+    /**
+     * 写入玩家数据, 写入失败或中途崩溃时须保留上一份完整数据
+     */
+    void write(UUID playerUuid, CompoundNBT root) throws IOException;
+
+    /**
+     * 列出所有已存储的玩家
+     */
+    Collection<UUID> list() throws IOException;
+
+    /**
+     * 将已写入的数据落盘
+     */
+    default void flush() throws IOException {
+    }
+
+    /**
+     * 落盘并释放打开的文件, 之后的读写会重新打开
+     */
+    default void close() throws IOException {
+        flush();
+    }
+
+}
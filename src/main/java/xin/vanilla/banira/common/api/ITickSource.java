@@ -0,0 +1,14 @@
+package xin.vanilla.banira.common.api;
+
+/**
+ * tick 计数来源, 如 MinecraftServer#getTickCount
+ */
+@FunctionalInterface
+public interface ITickSource {
+
+    /**
+     * 当前 tick
+     */
+    long currentTick();
+
+}
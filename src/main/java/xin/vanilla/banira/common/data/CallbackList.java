@@ -0,0 +1,358 @@
+package xin.vanilla.banira.common.data;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import net.minecraftforge.eventbus.api.EventPriority;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import xin.vanilla.banira.common.api.IListenerHandle;
+
+import javax.annotation.Nonnull;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * 写时复制的事件回调列表</br>
+ * 注册与注销通过 CAS 替换整个数组, 不加锁;
+ * 分发时遍历当前快照数组, 不创建迭代器, 分发过程中的注册与注销不影响本次分发</br>
+ * 回调按 {@link EventPriority} 排序, 同一优先级按注册顺序执行</br>
+ * 开启性能分析后记录每个回调的耗时分布并检查慢回调; 关闭性能分析时, 每个列表每 {@link #SLOW_CHECK_INTERVAL} 次分发抽样计时一次以检查慢回调,
+ * 其余分发不读取时钟
+ *
+ * @param <T> 事件参数类型
+ */
+public final class CallbackList<T> {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final Listener<?>[] EMPTY = new Listener<?>[0];
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<CallbackList, Listener[]> LISTENERS =
+            AtomicReferenceFieldUpdater.newUpdater(CallbackList.class, Listener[].class, "listeners");
+    /**
+     * 当前线程的分发状态, 用于在回调中取消事件
+     */
+    private static final ThreadLocal<DispatchState> DISPATCH = ThreadLocal.withInitial(DispatchState::new);
+    /**
+     * 同一监听器两次慢回调警告之间的最小间隔
+     */
+    private static final long SLOW_WARN_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(60);
+    /**
+     * 未开启性能分析时, 每个列表每隔多少次分发抽样计时一次, 须为 2 的幂
+     */
+    public static final int SLOW_CHECK_INTERVAL = 64;
+    /**
+     * 单次回调耗时超过该值(纳秒)时记录警告, 小于等于 0 表示不检查
+     */
+    private static volatile long slowListenerNanos = TimeUnit.MILLISECONDS.toNanos(5);
+    /**
+     * 是否记录回调耗时分布
+     */
+    private static volatile boolean profiling = false;
+    /**
+     * 所有已创建的回调列表, 用于汇总性能分析结果
+     */
+    private static final List<CallbackList<?>> INSTANCES = new CopyOnWriteArrayList<>();
+    /**
+     * 最多保留的已注销回调数量
+     */
+    private static final int MAX_RETIRED = 64;
+    /**
+     * 已注销但仍有耗时记录的回调, 保留至清空记录或被更新的注销挤出
+     */
+    private static final Deque<Listener<?>> RETIRED = new ArrayDeque<>();
+
+    @Getter
+    private final String eventName;
+    private volatile Listener<?>[] listeners = EMPTY;
+    /**
+     * 分发次数, 用于抽样检查慢回调; 多线程分发时计数可能丢失, 只影响抽样间隔
+     */
+    private int dispatches;
+
+    public CallbackList(String eventName) {
+        this.eventName = eventName;
+        INSTANCES.add(this);
+    }
+
+    /**
+     * 注册回调
+     */
+    public Listener<T> register(@Nonnull Consumer<? super T> callback) {
+        return register(EventPriority.NORMAL, callback, callback);
+    }
+
+    /**
+     * 注册回调
+     *
+     * @param priority 优先级
+     */
+    public Listener<T> register(@Nonnull EventPriority priority, @Nonnull Consumer<? super T> callback) {
+        return register(priority, callback, callback);
+    }
+
+    /**
+     * 注册回调
+     *
+     * @param priority 优先级
+     * @param callback 实际执行的回调
+     * @param source   用户提供的原始回调, 用于标识监听器
+     */
+    public Listener<T> register(@Nonnull EventPriority priority, @Nonnull Consumer<? super T> callback, @Nonnull Object source) {
+        Listener<T> listener = new Listener<>(this, priority, callback, source);
+        while (true) {
+            Listener<?>[] current = listeners;
+            // 插入到第一个优先级更低的回调之前, 保证同一优先级按注册顺序执行
+            int index = current.length;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i].priority.ordinal() > priority.ordinal()) {
+                    index = i;
+                    break;
+                }
+            }
+            Listener<?>[] updated = new Listener<?>[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            updated[index] = listener;
+            System.arraycopy(current, index, updated, index + 1, current.length - index);
+            if (LISTENERS.compareAndSet(this, current, updated)) {
+                return listener;
+            }
+        }
+    }
+
+    private boolean remove(Listener<?> listener) {
+        while (true) {
+            Listener<?>[] current = listeners;
+            int index = -1;
+            for (int i = 0; i < current.length; i++) {
+                if (current[i] == listener) {
+                    index = i;
+                    break;
+                }
+            }
+            if (index < 0) return false;
+            Listener<?>[] updated = current.length == 1 ? EMPTY : new Listener<?>[current.length - 1];
+            System.arraycopy(current, 0, updated, 0, index);
+            System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+            if (LISTENERS.compareAndSet(this, current, updated)) {
+                retire(listener);
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 分发事件
+     *
+     * @return 事件是否被回调取消
+     */
+    @SuppressWarnings("unchecked")
+    public boolean dispatch(T parameter) {
+        Listener<?>[] snapshot = listeners;
+        if (snapshot.length == 0) return false;
+        DispatchState state = DISPATCH.get();
+        boolean outerCancelled = state.cancelled;
+        state.depth++;
+        state.cancelled = false;
+        boolean timed = profiling || (slowListenerNanos > 0 && (++dispatches & (SLOW_CHECK_INTERVAL - 1)) == 0);
+        try {
+            for (Listener<?> listener : snapshot) {
+                long start = timed ? System.nanoTime() : 0;
+                try {
+                    ((Listener<T>) listener).callback.accept(parameter);
+                } catch (Throwable t) {
+                    LOGGER.warn("Error executing callback for {} event", eventName, t);
+                }
+                if (timed) {
+                    listener.record(eventName, System.nanoTime() - start);
+                }
+                if (state.cancelled) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            state.depth--;
+            state.cancelled = outerCancelled;
+        }
+    }
+
+    /**
+     * 取消当前线程正在分发的事件, 后续回调将不再执行</br>
+     * 只能在回调中调用
+     */
+    public static void cancel() {
+        DispatchState state = DISPATCH.get();
+        if (state.depth == 0) {
+            throw new IllegalStateException("No event is being dispatched on this thread");
+        }
+        state.cancelled = true;
+    }
+
+    /**
+     * 当前线程正在分发的事件是否已被取消
+     */
+    public static boolean isCancelled() {
+        return DISPATCH.get().cancelled;
+    }
+
+    /**
+     * 设置慢回调警告阈值
+     *
+     * @param nanos 单次回调耗时阈值(纳秒), 小于等于 0 表示不检查; 未开启性能分析时只检查抽样计时的分发
+     */
+    public static void setSlowListenerNanos(long nanos) {
+        slowListenerNanos = nanos;
+    }
+
+    public static long getSlowListenerNanos() {
+        return slowListenerNanos;
+    }
+
+    /**
+     * 开启或关闭回调耗时分布记录
+     */
+    public static void setProfiling(boolean enabled) {
+        profiling = enabled;
+    }
+
+    public static boolean isProfiling() {
+        return profiling;
+    }
+
+    /**
+     * 获取累计耗时最长的回调, 包含最近注销的回调, 可通过 {@link Listener#isRegistered()} 区分
+     *
+     * @param limit 最大数量
+     */
+    public static List<Listener<?>> topListeners(int limit) {
+        List<Listener<?>> result = new ArrayList<>();
+        for (CallbackList<?> callbacks : INSTANCES) {
+            for (Listener<?> listener : callbacks.listeners) {
+                if (listener.timings.total().count() > 0) {
+                    result.add(listener);
+                }
+            }
+        }
+        synchronized (RETIRED) {
+            result.addAll(RETIRED);
+        }
+        result.sort(Comparator.comparingLong((Listener<?> o) -> o.timings.total().sum()).reversed());
+        return result.size() > limit ? new ArrayList<>(result.subList(0, Math.max(0, limit))) : result;
+    }
+
+    /**
+     * 清空所有回调的耗时记录
+     */
+    public static void resetProfiling() {
+        for (CallbackList<?> callbacks : INSTANCES) {
+            for (Listener<?> listener : callbacks.listeners) {
+                listener.timings.reset();
+                listener.slowCalls.reset();
+            }
+        }
+        synchronized (RETIRED) {
+            RETIRED.clear();
+        }
+    }
+
+    /**
+     * 保留已注销回调的耗时记录, 避免其从统计中静默消失
+     */
+    private static void retire(Listener<?> listener) {
+        if (listener.timings.total().count() == 0) return;
+        synchronized (RETIRED) {
+            if (RETIRED.size() >= MAX_RETIRED) {
+                RETIRED.pollFirst();
+            }
+            RETIRED.addLast(listener);
+        }
+    }
+
+    public int size() {
+        return listeners.length;
+    }
+
+    public boolean isEmpty() {
+        return listeners.length == 0;
+    }
+
+    /**
+     * 已注册的回调
+     */
+    @Getter
+    @Accessors(fluent = true)
+    public static final class Listener<T> implements IListenerHandle {
+        private final CallbackList<T> owner;
+        private final EventPriority priority;
+        private final Consumer<? super T> callback;
+        /**
+         * 用户提供的原始回调
+         */
+        private final Object source;
+        /**
+         * 单次执行耗时分布(纳秒), 仅在开启性能分析时记录
+         */
+        private final RollingHistogram timings = new RollingHistogram();
+        /**
+         * 超过慢回调阈值的次数
+         */
+        private final LongAdder slowCalls = new LongAdder();
+        @Getter(AccessLevel.NONE)
+        private volatile long lastSlowWarnNanos = System.nanoTime() - SLOW_WARN_INTERVAL_NANOS;
+
+        private Listener(CallbackList<T> owner, EventPriority priority, Consumer<? super T> callback, Object source) {
+            this.owner = owner;
+            this.priority = priority;
+            this.callback = callback;
+            this.source = source;
+        }
+
+        /**
+         * 监听器名称, 取自原始回调的类名
+         */
+        public String name() {
+            String name = source.getClass().getName();
+            int lambda = name.indexOf("$$Lambda");
+            return lambda > 0 ? name.substring(0, lambda) + "::lambda" : name;
+        }
+
+        private void record(String eventName, long nanos) {
+            if (profiling) {
+                timings.record(nanos);
+            }
+            long threshold = slowListenerNanos;
+            if (threshold > 0 && nanos > threshold) {
+                slowCalls.increment();
+                long now = System.nanoTime();
+                if (now - lastSlowWarnNanos >= SLOW_WARN_INTERVAL_NANOS) {
+                    lastSlowWarnNanos = now;
+                    LOGGER.warn("Slow callback {} for {} event took {}ms ({} slow calls so far), consider registering it as async"
+                            , name(), eventName, String.format("%.3f", nanos / 1_000_000.0), slowCalls.sum());
+                }
+            }
+        }
+
+        @Override
+        public boolean unregister() {
+            return owner.remove(this);
+        }
+
+        @Override
+        public boolean isRegistered() {
+            for (Listener<?> listener : owner.listeners) {
+                if (listener == this) return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class DispatchState {
+        private int depth;
+        private boolean cancelled;
+    }
+}
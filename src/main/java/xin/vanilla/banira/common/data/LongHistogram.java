@@ -0,0 +1,96 @@
+package xin.vanilla.banira.common.data;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 以 2 的幂划分桶的无锁直方图</br>
+ * 记录开销为常数级, 百分位数返回所在桶的上界, 误差不超过一倍
+ */
+public class LongHistogram {
+    /**
+     * 桶 0 记录 0, 桶 n 记录 [2^(n-1), 2^n)
+     */
+    static final int BUCKETS = 65;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一个值, 负数按 0 处理
+     */
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+        count.increment();
+        sum.add(value);
+        if (value > max.get()) {
+            max.accumulateAndGet(value, Math::max);
+        }
+    }
+
+    public long count() {
+        return count.sum();
+    }
+
+    public long sum() {
+        return sum.sum();
+    }
+
+    public long max() {
+        return max.get();
+    }
+
+    public double mean() {
+        long c = count();
+        return c == 0 ? 0 : (double) sum() / c;
+    }
+
+    /**
+     * 估算百分位数
+     *
+     * @param percentile 0 ~ 1
+     */
+    public long percentile(double percentile) {
+        return percentile(percentile, this);
+    }
+
+    /**
+     * 估算多个直方图合并后的百分位数
+     *
+     * @param percentile 0 ~ 1
+     */
+    static long percentile(double percentile, LongHistogram... histograms) {
+        long total = 0;
+        long max = 0;
+        for (LongHistogram histogram : histograms) {
+            total += histogram.count();
+            max = Math.max(max, histogram.max());
+        }
+        if (total == 0) return 0;
+        long target = Math.max(1, (long) Math.ceil(total * Math.min(1, Math.max(0, percentile))));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            for (LongHistogram histogram : histograms) {
+                seen += histogram.buckets.get(i);
+            }
+            if (seen >= target) {
+                long upper = i == 0 ? 0 : i == 64 ? Long.MAX_VALUE : (1L << i) - 1;
+                return Math.min(upper, max);
+            }
+        }
+        return max;
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+}
@@ -0,0 +1,55 @@
+package xin.vanilla.banira.common.data;
+
+import lombok.Getter;
+import lombok.ToString;
+import lombok.experimental.Accessors;
+import net.minecraft.entity.player.PlayerEntity;
+import net.minecraft.util.RegistryKey;
+import net.minecraft.world.World;
+
+import java.util.UUID;
+
+/**
+ * 玩家事件快照</br>
+ * 异步回调在工作线程中执行, 不应再访问玩家实体, 所需信息在事件触发时复制到快照中
+ */
+@Getter
+@ToString
+@Accessors(fluent = true)
+public final class PlayerEventSnapshot {
+    private final UUID uuid;
+    private final String name;
+    /**
+     * 事件触发时玩家所在维度
+     */
+    private final RegistryKey<World> dimension;
+    /**
+     * 维度变化事件的来源维度, 其他事件为 null
+     */
+    private final RegistryKey<World> from;
+    /**
+     * 维度变化事件的目标维度, 其他事件为 null
+     */
+    private final RegistryKey<World> to;
+    /**
+     * 事件触发时间(毫秒时间戳)
+     */
+    private final long time;
+
+    public PlayerEventSnapshot(UUID uuid, String name, RegistryKey<World> dimension, RegistryKey<World> from, RegistryKey<World> to) {
+        this.uuid = uuid;
+        this.name = name;
+        this.dimension = dimension;
+        this.from = from;
+        this.to = to;
+        this.time = System.currentTimeMillis();
+    }
+
+    public static PlayerEventSnapshot of(PlayerEntity player) {
+        return of(player, null, null);
+    }
+
+    public static PlayerEventSnapshot of(PlayerEntity player, RegistryKey<World> from, RegistryKey<World> to) {
+        return new PlayerEventSnapshot(player.getUUID(), player.getGameProfile().getName(), player.level.dimension(), from, to);
+    }
+}
@@ -0,0 +1,113 @@
+package xin.vanilla.banira.common.data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 滚动窗口直方图</br>
+ * 同时记录自创建(或重置)以来的累计分布与最近一段时间内的分布,
+ * 最近分布由若干个按时间轮换的子窗口合并得出, 轮换时与记录并发的少量数据可能丢失
+ */
+public final class RollingHistogram {
+    private final LongHistogram total = new LongHistogram();
+    private final LongHistogram[] windows;
+    /**
+     * 各子窗口当前对应的时间段编号
+     */
+    private final AtomicLongArray epochs;
+    private final long windowNanos;
+
+    /**
+     * 默认保留最近 1 分钟, 每 10 秒轮换一次
+     */
+    public RollingHistogram() {
+        this(6, 10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * @param windows 子窗口数
+     * @param window  每个子窗口的时长
+     */
+    public RollingHistogram(int windows, long window, TimeUnit unit) {
+        this.windows = new LongHistogram[Math.max(1, windows)];
+        for (int i = 0; i < this.windows.length; i++) {
+            this.windows[i] = new LongHistogram();
+        }
+        this.epochs = new AtomicLongArray(this.windows.length);
+        for (int i = 0; i < this.windows.length; i++) {
+            this.epochs.set(i, Long.MIN_VALUE);
+        }
+        this.windowNanos = Math.max(1, unit.toNanos(window));
+    }
+
+    public void record(long value) {
+        total.record(value);
+        long epoch = Math.floorDiv(System.nanoTime(), windowNanos);
+        int index = (int) Math.floorMod(epoch, (long) windows.length);
+        long current = epochs.get(index);
+        if (current != epoch && epochs.compareAndSet(index, current, epoch)) {
+            windows[index].reset();
+        }
+        windows[index].record(value);
+    }
+
+    /**
+     * 累计分布
+     */
+    public LongHistogram total() {
+        return total;
+    }
+
+    /**
+     * 最近一段时间内的百分位数
+     *
+     * @param percentile 0 ~ 1
+     */
+    public long recentPercentile(double percentile) {
+        return LongHistogram.percentile(percentile, recent());
+    }
+
+    /**
+     * 最近一段时间内的记录数
+     */
+    public long recentCount() {
+        long count = 0;
+        for (LongHistogram histogram : recent()) {
+            count += histogram.count();
+        }
+        return count;
+    }
+
+    /**
+     * 最近一段时间内的最大值
+     */
+    public long recentMax() {
+        long max = 0;
+        for (LongHistogram histogram : recent()) {
+            max = Math.max(max, histogram.max());
+        }
+        return max;
+    }
+
+    public void reset() {
+        total.reset();
+        for (int i = 0; i < windows.length; i++) {
+            epochs.set(i, Long.MIN_VALUE);
+            windows[i].reset();
+        }
+    }
+
+    private LongHistogram[] recent() {
+        long epoch = Math.floorDiv(System.nanoTime(), windowNanos);
+        List<LongHistogram> result = new ArrayList<>(windows.length);
+        for (int i = 0; i < windows.length; i++) {
+            long e = epochs.get(i);
+            if (e != Long.MIN_VALUE && epoch - e < windows.length) {
+                result.add(windows[i]);
+            }
+        }
+        return result.toArray(new LongHistogram[0]);
+    }
+}
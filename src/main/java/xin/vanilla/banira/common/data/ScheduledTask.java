@@ -1,30 +1,242 @@
 package xin.vanilla.banira.common.data;
 
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.ToString;
 import lombok.experimental.Accessors;
+import xin.vanilla.banira.common.enums.EnumScheduleMode;
+import xin.vanilla.banira.common.enums.EnumTaskPriority;
 
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
 
+/**
+ * 计划任务</br>
+ * 同时作为调度句柄, 可通过 {@link #cancel()} 以 O(1) 取消, 重复任务在每次执行后复用同一实例
+ */
 @Getter
 @ToString
-@AllArgsConstructor
 @Accessors(fluent = true)
 public class ScheduledTask implements Comparable<ScheduledTask> {
     private static final AtomicLong SEQ = new AtomicLong(0);
 
+    public static final String UNKNOWN_OWNER = "unknown";
+
+    static final int STATE_PENDING = 0;
+    static final int STATE_RUNNING = 1;
+    static final int STATE_DONE = 2;
+    static final int STATE_CANCELLED = 3;
+
+    private static final AtomicIntegerFieldUpdater<ScheduledTask> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(ScheduledTask.class, "state");
+
     private final long seqNo;
-    private final long executeTick;
+    /**
+     * 计划执行的 tick, 重复任务每次执行后更新
+     */
+    private volatile long executeTick;
     private final Runnable runnable;
     private final boolean clientSide;
+    private final EnumTaskPriority priority;
+    private final EnumScheduleMode mode;
+    /**
+     * 重复周期(tick)
+     */
+    private final long period;
+    /**
+     * 现实时间任务的下次触发时间计算方式
+     */
+    @ToString.Exclude
+    private final UnaryOperator<Date> nextFireTime;
+    /**
+     * 现实时间任务的下次触发时间(毫秒时间戳)
+     */
+    private volatile long fireTime;
+    /**
+     * 所有者 modId, 用于按 mod 统计执行情况
+     */
+    private volatile String owner = UNKNOWN_OWNER;
+    /**
+     * 任务标签
+     */
+    private volatile String label = "";
+
+    // region 时间轮链表节点, 仅由 tick 线程访问
+
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    ScheduledTask prev;
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    ScheduledTask next;
+    /**
+     * 所在槽位, -1 表示未挂载
+     */
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    int slot = -1;
+    /**
+     * 本次等待中是否已因超出时间预算被延后过
+     */
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    boolean deferred;
+    /**
+     * 所属时间轮
+     */
+    @Getter(AccessLevel.NONE)
+    @ToString.Exclude
+    volatile TimingWheel wheel;
+
+    // endregion
+
+    @Getter(AccessLevel.NONE)
+    private volatile int state = STATE_PENDING;
+
+    public ScheduledTask(long seqNo, long executeTick, Runnable runnable, boolean clientSide) {
+        this(seqNo, executeTick, runnable, clientSide, EnumTaskPriority.NORMAL);
+    }
+
+    public ScheduledTask(long seqNo, long executeTick, Runnable runnable, boolean clientSide, EnumTaskPriority priority) {
+        this(seqNo, executeTick, runnable, clientSide, priority, EnumScheduleMode.ONCE, 0, null, 0);
+    }
+
+    public ScheduledTask(long seqNo, long executeTick, Runnable runnable, boolean clientSide, EnumTaskPriority priority
+            , EnumScheduleMode mode, long period, UnaryOperator<Date> nextFireTime, long fireTime) {
+        this.seqNo = seqNo;
+        this.executeTick = executeTick;
+        this.runnable = runnable;
+        this.clientSide = clientSide;
+        this.priority = priority == null ? EnumTaskPriority.NORMAL : priority;
+        this.mode = mode == null ? EnumScheduleMode.ONCE : mode;
+        this.period = Math.max(1, period);
+        this.nextFireTime = nextFireTime;
+        this.fireTime = fireTime;
+    }
 
     public static ScheduledTask server(long executeTick, Runnable runnable) {
-        return new ScheduledTask(executeTick, SEQ.getAndIncrement(), runnable, false);
+        return server(executeTick, EnumTaskPriority.NORMAL, runnable);
+    }
+
+    public static ScheduledTask server(long executeTick, EnumTaskPriority priority, Runnable runnable) {
+        return new ScheduledTask(SEQ.getAndIncrement(), executeTick, runnable, false, priority);
     }
 
     public static ScheduledTask client(long executeTick, Runnable runnable) {
-        return new ScheduledTask(executeTick, SEQ.getAndIncrement(), runnable, true);
+        return client(executeTick, EnumTaskPriority.NORMAL, runnable);
+    }
+
+    public static ScheduledTask client(long executeTick, EnumTaskPriority priority, Runnable runnable) {
+        return new ScheduledTask(SEQ.getAndIncrement(), executeTick, runnable, true, priority);
+    }
+
+    /**
+     * 创建按 tick 周期重复的任务
+     *
+     * @param mode   {@link EnumScheduleMode#FIXED_RATE} 或 {@link EnumScheduleMode#FIXED_DELAY}
+     * @param period 周期(tick)
+     */
+    public static ScheduledTask repeating(boolean clientSide, long executeTick, EnumScheduleMode mode, long period, EnumTaskPriority priority, Runnable runnable) {
+        return new ScheduledTask(SEQ.getAndIncrement(), executeTick, runnable, clientSide, priority, mode, period, null, 0);
+    }
+
+    /**
+     * 创建按现实时间重复的任务
+     *
+     * @param fireTime     首次触发时间(毫秒时间戳)
+     * @param nextFireTime 根据本次触发时间计算下次触发时间
+     */
+    public static ScheduledTask wallClock(boolean clientSide, long executeTick, long fireTime, UnaryOperator<Date> nextFireTime, EnumTaskPriority priority, Runnable runnable) {
+        return new ScheduledTask(SEQ.getAndIncrement(), executeTick, runnable, clientSide, priority, EnumScheduleMode.WALL_CLOCK, 1, nextFireTime, fireTime);
+    }
+
+    /**
+     * 取消任务, 重复任务在执行中取消时不会再次执行
+     *
+     * @return 是否取消成功
+     */
+    public boolean cancel() {
+        TimingWheel owner = wheel;
+        return owner != null && owner.cancel(this);
+    }
+
+    /**
+     * 是否已被取消
+     */
+    public boolean isCancelled() {
+        return state == STATE_CANCELLED;
+    }
+
+    /**
+     * 是否已执行完毕
+     */
+    public boolean isDone() {
+        return state == STATE_DONE;
+    }
+
+    boolean markRunning() {
+        return STATE.compareAndSet(this, STATE_PENDING, STATE_RUNNING);
+    }
+
+    /**
+     * @return 取消前的状态, 取消失败返回 -1
+     */
+    int markCancelled() {
+        while (true) {
+            int current = state;
+            if (current != STATE_PENDING && !(current == STATE_RUNNING && mode.isRepeating())) {
+                return -1;
+            }
+            if (STATE.compareAndSet(this, current, STATE_CANCELLED)) {
+                return current;
+            }
+        }
+    }
+
+    /**
+     * 标记任务执行完毕
+     */
+    public void markDone() {
+        STATE.compareAndSet(this, STATE_RUNNING, STATE_DONE);
+    }
+
+    /**
+     * 将执行完毕的重复任务重新置为等待状态
+     *
+     * @param executeTick 下次执行的 tick
+     * @return 任务未被取消且重置成功
+     */
+    public boolean rearm(long executeTick) {
+        this.executeTick = executeTick;
+        this.deferred = false;
+        return STATE.compareAndSet(this, STATE_RUNNING, STATE_PENDING);
+    }
+
+    /**
+     * 设置所有者 modId</br>
+     * 应在提交前设置, 提交后设置时任务可能已按原值执行并计入统计
+     */
+    public ScheduledTask owner(String owner) {
+        this.owner = owner == null || owner.isEmpty() ? UNKNOWN_OWNER : owner;
+        return this;
+    }
+
+    /**
+     * 设置任务标签</br>
+     * 应在提交前设置, 提交后设置时任务可能已按原值执行并计入统计
+     */
+    public ScheduledTask label(String label) {
+        this.label = label == null ? "" : label;
+        return this;
+    }
+
+    /**
+     * 更新现实时间任务的下次触发时间
+     */
+    public void fireTime(long fireTime) {
+        this.fireTime = fireTime;
     }
 
     @Override
@@ -39,14 +251,11 @@ public class ScheduledTask implements Comparable<ScheduledTask> {
         if (this == o) return true;
         if (!(o instanceof ScheduledTask)) return false;
         ScheduledTask that = (ScheduledTask) o;
-        return executeTick == that.executeTick && seqNo == that.seqNo && runnable.equals(that.runnable);
+        return seqNo == that.seqNo;
     }
 
     @Override
     public int hashCode() {
-        int result = Long.hashCode(executeTick);
-        result = 31 * result + Long.hashCode(seqNo);
-        result = 31 * result + runnable.hashCode();
-        return result;
+        return Long.hashCode(seqNo);
     }
 }
@@ -0,0 +1,239 @@
+package xin.vanilla.banira.common.data;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import xin.vanilla.banira.common.api.ITickSource;
+import xin.vanilla.banira.common.enums.EnumScheduleMode;
+import xin.vanilla.banira.common.enums.EnumTaskPriority;
+
+import java.util.Date;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * 计划任务执行通道</br>
+ * 持有一条时间轮及其统计信息, 由 tick 线程调用 {@link #run(long)} 执行到期任务, 不依赖游戏环境
+ */
+@Getter
+@Accessors(fluent = true)
+public final class SchedulerLane {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * 现实时间任务的最长检查间隔(tick), 用于修正服务器卡顿造成的 tick 与现实时间偏差
+     */
+    public static final int WALL_CLOCK_CHECK_TICKS = 20 * 60;
+
+    private final boolean clientSide;
+    private final TimingWheel tasks = new TimingWheel();
+    private final AtomicLong executedCount = new AtomicLong(0);
+    /**
+     * 执行时抛出异常的任务数
+     */
+    private final AtomicLong failedCount = new AtomicLong(0);
+    /**
+     * 因超出时间预算而被延后的任务数, 同一任务连续顺延多个 tick 只计一次
+     */
+    private final AtomicLong deferredCount = new AtomicLong(0);
+    /**
+     * 任务实际执行 tick 与计划 tick 之差的累计值
+     */
+    private final AtomicLong waitTicksTotal = new AtomicLong(0);
+    private final AtomicLong waitTicksMax = new AtomicLong(0);
+    /**
+     * 每 tick 执行非关键任务的时间预算(纳秒), 小于等于 0 表示不限制
+     */
+    private volatile long tickBudgetNanos = 0;
+    /**
+     * 按所有者统计的执行情况
+     */
+    private final Map<String, TaskStatistics> ownerStatistics = new ConcurrentHashMap<>();
+
+    public SchedulerLane(boolean clientSide) {
+        this.clientSide = clientSide;
+    }
+
+    public void tickBudgetNanos(long tickBudgetNanos) {
+        this.tickBudgetNanos = tickBudgetNanos;
+    }
+
+    // region 提交任务
+
+    public ScheduledTask newTask(long executeTick, EnumTaskPriority priority, Runnable action) {
+        return clientSide
+                ? ScheduledTask.client(executeTick, priority, action)
+                : ScheduledTask.server(executeTick, priority, action);
+    }
+
+    public ScheduledTask submit(ScheduledTask task) {
+        tasks.add(task);
+        return task;
+    }
+
+    /**
+     * 延迟指定 tick 后执行
+     */
+    public ScheduledTask schedule(ITickSource source, int delayTicks, EnumTaskPriority priority, Runnable action) {
+        return schedule(source, delayTicks, priority, null, null, action);
+    }
+
+    /**
+     * 延迟指定 tick 后执行, 所有者与标签在提交前设置
+     */
+    public ScheduledTask schedule(ITickSource source, int delayTicks, EnumTaskPriority priority, String owner, String label, Runnable action) {
+        long executeAt = source.currentTick() + Math.max(0, delayTicks);
+        return submit(newTask(executeAt, priority, action).owner(owner).label(label));
+    }
+
+    /**
+     * 按 tick 周期重复执行
+     *
+     * @param mode {@link EnumScheduleMode#FIXED_RATE} 或 {@link EnumScheduleMode#FIXED_DELAY}
+     */
+    public ScheduledTask scheduleRepeating(ITickSource source, int initialDelayTicks, EnumScheduleMode mode, int periodTicks, EnumTaskPriority priority, Runnable action) {
+        long executeAt = source.currentTick() + Math.max(0, initialDelayTicks);
+        return submit(ScheduledTask.repeating(clientSide, executeAt, mode, periodTicks, priority, action));
+    }
+
+    /**
+     * 按现实时间重复执行
+     *
+     * @param nextFireTime 根据当前时间计算下次触发时间, 返回 null 表示不再执行
+     */
+    public ScheduledTask scheduleAt(ITickSource source, UnaryOperator<Date> nextFireTime, EnumTaskPriority priority, Runnable action) {
+        Date first = nextFireTime.apply(new Date());
+        if (first == null) {
+            throw new IllegalArgumentException("Wall clock schedule has no fire time");
+        }
+        long executeAt = source.currentTick() + ticksUntil(first.getTime());
+        return submit(ScheduledTask.wallClock(clientSide, executeAt, first.getTime(), nextFireTime, priority, action));
+    }
+
+    // endregion
+
+    /**
+     * 推进至指定 tick 并执行到期任务, 只允许在 tick 线程调用
+     */
+    public void run(long currentTick) {
+        try {
+            tasks.advance(currentTick);
+            long budget = tickBudgetNanos;
+            long start = System.nanoTime();
+            boolean ranNormal = false;
+            boolean overBudget = false;
+            ScheduledTask task;
+            while ((task = tasks.pollDue(overBudget)) != null) {
+                // 现实时间任务尚未到点, 重新挂载后继续等待
+                if (task.mode() == EnumScheduleMode.WALL_CLOCK && System.currentTimeMillis() < task.fireTime()) {
+                    if (task.rearm(currentTick + ticksUntil(task.fireTime()))) {
+                        tasks.reschedule(task);
+                    }
+                    continue;
+                }
+                long wait = currentTick - task.executeTick();
+                if (wait > 0) {
+                    waitTicksTotal.addAndGet(wait);
+                    if (wait > waitTicksMax.get()) {
+                        waitTicksMax.accumulateAndGet(wait, Math::max);
+                    }
+                }
+                long taskStart = System.nanoTime();
+                boolean failed = false;
+                try {
+                    task.runnable().run();
+                    executedCount.incrementAndGet();
+                } catch (Throwable t) {
+                    failed = true;
+                    failedCount.incrementAndGet();
+                    LOGGER.warn("Scheduled task {}[{}] threw an exception", task.owner(), task.label(), t);
+                } finally {
+                    finishTask(task, currentTick);
+                }
+                long taskEnd = System.nanoTime();
+                statistics(task.owner()).record(task.label(), taskEnd - taskStart, Math.max(0, wait), failed);
+                // 每 tick 至少执行一个非关键任务, 避免被关键任务饿死
+                if (task.priority() != EnumTaskPriority.CRITICAL) ranNormal = true;
+                if (!overBudget && budget > 0 && ranNormal && taskEnd - start >= budget) {
+                    overBudget = true;
+                }
+            }
+            if (overBudget) {
+                int deferred = tasks.markDeferred();
+                if (deferred > 0) {
+                    deferredCount.addAndGet(deferred);
+                }
+            }
+        } catch (Throwable t) {
+            LOGGER.error("Failed while executing scheduled tasks", t);
+        }
+    }
+
+    /**
+     * 获取指定所有者的执行统计, 不存在时创建
+     */
+    public TaskStatistics statistics(String owner) {
+        TaskStatistics statistics = ownerStatistics.get(owner);
+        if (statistics == null) {
+            statistics = ownerStatistics.computeIfAbsent(owner, TaskStatistics::new);
+        }
+        return statistics;
+    }
+
+    /**
+     * 平均等待 tick 数(实际执行 tick - 计划 tick), 包含执行失败的任务
+     */
+    public double averageWaitTicks() {
+        long runs = executedCount.get() + failedCount.get();
+        return runs == 0 ? 0 : (double) waitTicksTotal.get() / runs;
+    }
+
+    /**
+     * 结束本次执行, 重复任务复用同一实例重新挂载
+     */
+    private void finishTask(ScheduledTask task, long currentTick) {
+        long next;
+        switch (task.mode()) {
+            case FIXED_RATE:
+                next = task.executeTick() + task.period();
+                if (next <= currentTick) {
+                    next += ((currentTick - next) / task.period() + 1) * task.period();
+                }
+                break;
+            case FIXED_DELAY:
+                next = currentTick + task.period();
+                break;
+            case WALL_CLOCK:
+                Date fireTime = null;
+                try {
+                    fireTime = task.nextFireTime().apply(new Date(Math.max(task.fireTime(), System.currentTimeMillis())));
+                } catch (Throwable t) {
+                    LOGGER.warn("Failed to compute next fire time of scheduled task", t);
+                }
+                if (fireTime == null) {
+                    task.markDone();
+                    return;
+                }
+                task.fireTime(fireTime.getTime());
+                next = currentTick + ticksUntil(fireTime.getTime());
+                break;
+            default:
+                task.markDone();
+                return;
+        }
+        if (task.rearm(next)) {
+            tasks.reschedule(task);
+        }
+    }
+
+    /**
+     * 估算距离指定现实时间的 tick 数, 最长不超过 {@link #WALL_CLOCK_CHECK_TICKS}
+     */
+    public static long ticksUntil(long timeMillis) {
+        long ticks = (timeMillis - System.currentTimeMillis() + 49) / 50;
+        return Math.max(1, Math.min(WALL_CLOCK_CHECK_TICKS, ticks));
+    }
+}
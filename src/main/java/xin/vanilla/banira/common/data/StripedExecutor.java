@@ -0,0 +1,73 @@
+package xin.vanilla.banira.common.data;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.concurrent.*;
+
+/**
+ * 分段单线程执行器</br>
+ * 同一键的任务总是提交到同一条单线程执行器, 从而保证按提交顺序执行, 不同键之间可并行
+ */
+public final class StripedExecutor {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private final ExecutorService[] stripes;
+
+    /**
+     * @param name    线程名前缀
+     * @param stripes 分段数
+     */
+    public StripedExecutor(String name, int stripes) {
+        this.stripes = new ExecutorService[Math.max(1, stripes)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            String threadName = name + "-" + (i + 1);
+            this.stripes[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * 按键提交任务
+     */
+    public void execute(Object key, Runnable task) {
+        int hash = key == null ? 0 : key.hashCode();
+        hash ^= (hash >>> 16);
+        stripes[(hash & Integer.MAX_VALUE) % stripes.length].execute(() -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                LOGGER.warn("Error executing striped task", t);
+            }
+        });
+    }
+
+    /**
+     * 等待此前提交的所有任务执行完毕
+     *
+     * @return 是否在超时前全部执行完毕
+     */
+    public boolean awaitQuiescence(long timeout, TimeUnit unit) {
+        CountDownLatch latch = new CountDownLatch(stripes.length);
+        for (ExecutorService stripe : stripes) {
+            try {
+                stripe.execute(latch::countDown);
+            } catch (RejectedExecutionException e) {
+                latch.countDown();
+            }
+        }
+        try {
+            return latch.await(timeout, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public int stripes() {
+        return stripes.length;
+    }
+}
@@ -0,0 +1,59 @@
+package xin.vanilla.banira.common.data;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 同一所有者的计划任务执行统计
+ */
+@Getter
+@Accessors(fluent = true)
+public final class TaskStatistics {
+    /**
+     * 所有者 modId
+     */
+    private final String owner;
+    /**
+     * 单次执行耗时(纳秒)
+     */
+    private final LongHistogram runNanos = new LongHistogram();
+    /**
+     * 延迟 tick 数(实际执行 tick - 计划 tick)
+     */
+    private final LongHistogram lateTicks = new LongHistogram();
+    /**
+     * 抛出异常的次数
+     */
+    private final AtomicLong exceptions = new AtomicLong();
+    /**
+     * 单次耗时最长的任务标签
+     */
+    private volatile String slowestLabel = "";
+    private volatile long slowestNanos = 0;
+
+    public TaskStatistics(String owner) {
+        this.owner = owner;
+    }
+
+    public void record(String label, long nanos, long lateTicks, boolean failed) {
+        this.runNanos.record(nanos);
+        this.lateTicks.record(lateTicks);
+        if (failed) {
+            this.exceptions.incrementAndGet();
+        }
+        if (nanos > slowestNanos) {
+            slowestNanos = nanos;
+            slowestLabel = label;
+        }
+    }
+
+    public void reset() {
+        runNanos.reset();
+        lateTicks.reset();
+        exceptions.set(0);
+        slowestLabel = "";
+        slowestNanos = 0;
+    }
+}
@@ -0,0 +1,292 @@
+package xin.vanilla.banira.common.data;
+
+import xin.vanilla.banira.common.enums.EnumTaskPriority;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 以 tick 为单位的分层哈希时间轮</br>
+ * 任意线程均可调用 {@link #add} 与 {@link #cancel}, 二者均为 O(1);
+ * {@link #advance} 与 {@link #pollDue} 只允许在 tick 线程调用, 每 tick 仅处理当前槽位</br>
+ * 到期任务按优先级分别排队, 未执行完的到期任务保留原有顺序留待下一 tick
+ */
+public final class TimingWheel {
+    /**
+     * 每层槽位数的位数
+     */
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    /**
+     * 层数, 共覆盖 2^24 tick (约 9.7 天), 更远的任务会在最高层循环等待
+     */
+    private static final int LEVELS = 4;
+    private static final long MAX_SPAN = 1L << (BITS * LEVELS);
+    /**
+     * 到期任务链表所在的起始槽位, 每个优先级一个
+     */
+    private static final int DUE = LEVELS * SLOTS;
+    private static final EnumTaskPriority[] PRIORITIES = EnumTaskPriority.values();
+
+    private final ScheduledTask[] heads = new ScheduledTask[DUE + PRIORITIES.length];
+    private final ScheduledTask[] tails = new ScheduledTask[DUE + PRIORITIES.length];
+
+    /**
+     * 跨线程提交的新任务与取消请求
+     */
+    private final Queue<ScheduledTask> inbox = new ConcurrentLinkedQueue<>();
+    private final Queue<ScheduledTask> cancelled = new ConcurrentLinkedQueue<>();
+
+    /**
+     * 等待执行的任务数
+     */
+    private final AtomicInteger size = new AtomicInteger();
+    /**
+     * 挂载在各层槽位中的任务数(不含到期链表)
+     */
+    private int linked = 0;
+    /**
+     * 到期链表中的任务数
+     */
+    private int due = 0;
+    private volatile long currentTick = 0;
+    private boolean started = false;
+
+    /**
+     * 添加任务
+     */
+    public void add(ScheduledTask task) {
+        task.wheel = this;
+        size.incrementAndGet();
+        inbox.offer(task);
+    }
+
+    /**
+     * 在 tick 线程中重新挂载已通过 {@link ScheduledTask#rearm} 重置的重复任务
+     */
+    public void reschedule(ScheduledTask task) {
+        size.incrementAndGet();
+        place(task);
+    }
+
+    /**
+     * 取消任务
+     *
+     * @return 任务尚未执行(或为执行中的重复任务)且取消成功
+     */
+    public boolean cancel(ScheduledTask task) {
+        if (task == null || task.wheel != this) return false;
+        int previous = task.markCancelled();
+        if (previous == ScheduledTask.STATE_PENDING) {
+            size.decrementAndGet();
+            cancelled.offer(task);
+            return true;
+        }
+        return previous == ScheduledTask.STATE_RUNNING;
+    }
+
+    /**
+     * 推进时间轮至指定 tick, 并将到期任务移入到期链表
+     */
+    public void advance(long tick) {
+        if (!started) {
+            currentTick = tick;
+            started = true;
+        } else if (tick < currentTick) {
+            rebase(tick);
+        }
+        transferInbox();
+        processCancelled();
+        while (currentTick < tick) {
+            if (linked == 0) {
+                currentTick = tick;
+                break;
+            }
+            currentTick++;
+            for (int level = LEVELS - 1; level > 0; level--) {
+                if ((currentTick & ((1L << (BITS * level)) - 1)) == 0) {
+                    cascade(level * SLOTS + (int) ((currentTick >> (BITS * level)) & MASK));
+                }
+            }
+            int slot = (int) (currentTick & MASK);
+            for (ScheduledTask task = heads[slot]; task != null; ) {
+                ScheduledTask next = task.next;
+                unlink(task);
+                linkDue(task);
+                task = next;
+            }
+        }
+    }
+
+    /**
+     * 按优先级取出下一个到期任务
+     *
+     * @return 到期任务, 若无则返回 null
+     */
+    public ScheduledTask pollDue() {
+        return pollDue(false);
+    }
+
+    /**
+     * 按优先级取出下一个到期任务
+     *
+     * @param criticalOnly 是否仅取出 {@link EnumTaskPriority#CRITICAL} 任务
+     * @return 到期任务, 若无则返回 null
+     */
+    public ScheduledTask pollDue(boolean criticalOnly) {
+        transferInbox();
+        int end = criticalOnly ? DUE + EnumTaskPriority.CRITICAL.ordinal() + 1 : DUE + PRIORITIES.length;
+        for (int slot = DUE; slot < end; slot++) {
+            ScheduledTask task;
+            while ((task = heads[slot]) != null) {
+                unlink(task);
+                if (task.markRunning()) {
+                    size.decrementAndGet();
+                    return task;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 已到期但尚未执行的任务数
+     */
+    public int dueSize() {
+        return due;
+    }
+
+    /**
+     * 将仍留在到期链表中的任务标记为已延后
+     *
+     * @return 本次新标记的任务数, 已标记过的任务不重复计入
+     */
+    public int markDeferred() {
+        int count = 0;
+        for (int slot = DUE; slot < heads.length; slot++) {
+            for (ScheduledTask task = heads[slot]; task != null; task = task.next) {
+                if (!task.deferred) {
+                    task.deferred = true;
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 等待执行的任务数
+     */
+    public int size() {
+        return size.get();
+    }
+
+    public long currentTick() {
+        return currentTick;
+    }
+
+    private void transferInbox() {
+        ScheduledTask task;
+        while ((task = inbox.poll()) != null) {
+            if (!task.isCancelled()) {
+                place(task);
+            }
+        }
+    }
+
+    private void processCancelled() {
+        ScheduledTask task;
+        while ((task = cancelled.poll()) != null) {
+            if (task.slot >= 0) {
+                unlink(task);
+            }
+        }
+    }
+
+    private void cascade(int slot) {
+        for (ScheduledTask task = heads[slot]; task != null; ) {
+            ScheduledTask next = task.next;
+            unlink(task);
+            place(task);
+            task = next;
+        }
+    }
+
+    /**
+     * 时间回退(如集成服务端重新开档)时按新的当前 tick 重新挂载所有任务
+     */
+    private void rebase(long tick) {
+        List<ScheduledTask> tasks = new ArrayList<>(linked);
+        for (int slot = 0; slot < DUE; slot++) {
+            for (ScheduledTask task = heads[slot]; task != null; ) {
+                ScheduledTask next = task.next;
+                unlink(task);
+                tasks.add(task);
+                task = next;
+            }
+        }
+        currentTick = tick;
+        for (ScheduledTask task : tasks) {
+            place(task);
+        }
+    }
+
+    private void place(ScheduledTask task) {
+        long executeTick = task.executeTick();
+        long delta = executeTick - currentTick;
+        if (delta <= 0) {
+            linkDue(task);
+            return;
+        }
+        for (int level = 0; level < LEVELS; level++) {
+            if (delta < 1L << (BITS * (level + 1))) {
+                link(task, level * SLOTS + (int) ((executeTick >> (BITS * level)) & MASK));
+                return;
+            }
+        }
+        // 超出时间轮范围, 挂在最高层最远的槽位, 级联时重新计算
+        int level = LEVELS - 1;
+        link(task, level * SLOTS + (int) (((currentTick + MAX_SPAN - 1) >> (BITS * level)) & MASK));
+    }
+
+    private void linkDue(ScheduledTask task) {
+        link(task, DUE + task.priority().ordinal());
+    }
+
+    private void link(ScheduledTask task, int slot) {
+        task.slot = slot;
+        task.next = null;
+        task.prev = tails[slot];
+        if (tails[slot] == null) {
+            heads[slot] = task;
+        } else {
+            tails[slot].next = task;
+        }
+        tails[slot] = task;
+        if (slot < DUE) linked++;
+        else due++;
+    }
+
+    private void unlink(ScheduledTask task) {
+        int slot = task.slot;
+        if (task.prev == null) {
+            heads[slot] = task.next;
+        } else {
+            task.prev.next = task.next;
+        }
+        if (task.next == null) {
+            tails[slot] = task.prev;
+        } else {
+            task.next.prev = task.prev;
+        }
+        task.prev = null;
+        task.next = null;
+        task.slot = -1;
+        if (slot < DUE) linked--;
+        else due--;
+    }
+}
@@ -0,0 +1,74 @@
+package xin.vanilla.banira.common.data;
+
+/**
+ * 令牌桶</br>
+ * 令牌按固定速率补充至容量上限, 每次请求消耗指定数量的令牌; 预约时允许令牌暂时为负, 后续请求需等待补足
+ */
+public final class TokenBucket {
+    private final double capacity;
+    private final double refillPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param capacity        容量, 即允许的突发量
+     * @param refillPerSecond 每秒补充的令牌数
+     */
+    public TokenBucket(double capacity, double refillPerSecond) {
+        if (capacity <= 0 || refillPerSecond <= 0) {
+            throw new IllegalArgumentException("Capacity and refill rate must be positive: " + capacity + ", " + refillPerSecond);
+        }
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / 1_000_000_000D;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * 尝试立即获取令牌
+     *
+     * @return 令牌足够且已扣除
+     */
+    public synchronized boolean tryAcquire(double cost) {
+        refill();
+        if (tokens >= cost) {
+            tokens -= cost;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 预约令牌, 令牌不足时扣除并返回需要等待的时间
+     *
+     * @param maxWaitNanos 允许的最长等待时间
+     * @return 需要等待的纳秒数, 0 表示可立即执行, -1 表示等待时间超出上限(此时不扣除令牌)
+     */
+    public synchronized long reserve(double cost, long maxWaitNanos) {
+        refill();
+        if (tokens >= cost) {
+            tokens -= cost;
+            return 0;
+        }
+        long wait = (long) Math.ceil((cost - tokens) / refillPerNano);
+        if (cost > capacity || wait > maxWaitNanos) {
+            return -1;
+        }
+        tokens -= cost;
+        return wait;
+    }
+
+    /**
+     * 当前可用令牌数, 可能为负
+     */
+    public synchronized double available() {
+        refill();
+        return tokens;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+    }
+}
@@ -0,0 +1,16 @@
+package xin.vanilla.banira.common.enums;
+
+/**
+ * 入站网络包超出频率限制时的处理方式
+ */
+public enum EnumLimitAction {
+    /**
+     * 直接丢弃
+     */
+    DROP,
+    /**
+     * 延后至令牌足够时处理, 等待时间超过上限时丢弃
+     */
+    DELAY,
+    ;
+}
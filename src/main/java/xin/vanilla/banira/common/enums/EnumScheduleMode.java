@@ -0,0 +1,28 @@
+package xin.vanilla.banira.common.enums;
+
+/**
+ * 计划任务的调度方式
+ */
+public enum EnumScheduleMode {
+    /**
+     * 仅执行一次
+     */
+    ONCE,
+    /**
+     * 按固定频率重复, 下次执行 tick = 本次计划 tick + 周期
+     */
+    FIXED_RATE,
+    /**
+     * 按固定间隔重复, 下次执行 tick = 本次实际执行 tick + 间隔
+     */
+    FIXED_DELAY,
+    /**
+     * 按现实时间重复, 如每天 04:00
+     */
+    WALL_CLOCK,
+    ;
+
+    public boolean isRepeating() {
+        return this != ONCE;
+    }
+}
@@ -0,0 +1,23 @@
+package xin.vanilla.banira.common.enums;
+
+/**
+ * 计划任务优先级, 同一 tick 内按声明顺序执行
+ */
+public enum EnumTaskPriority {
+    /**
+     * 关键任务, 不受每 tick 时间预算限制, 永不延后
+     */
+    CRITICAL,
+    HIGH,
+    NORMAL,
+    LOW,
+    ;
+
+    public static EnumTaskPriority fromString(String priority) {
+        try {
+            return EnumTaskPriority.valueOf(priority.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid task priority: " + priority);
+        }
+    }
+}
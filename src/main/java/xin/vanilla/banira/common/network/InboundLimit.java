@@ -0,0 +1,136 @@
+package xin.vanilla.banira.common.network;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import xin.vanilla.banira.common.data.TokenBucket;
+import xin.vanilla.banira.common.enums.EnumLimitAction;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ToIntFunction;
+
+/**
+ * 服务端入站消息的频率限制规则, 由 {@link NetworkHandler#limit} 创建</br>
+ * 每个连接(即每个玩家)对每种消息持有独立的令牌桶, 每条消息按 {@link #cost} 消耗令牌
+ *
+ * @param <MSG> 消息类型
+ */
+@Getter
+@Accessors(fluent = true)
+public final class InboundLimit<MSG> {
+    /**
+     * 默认最长延后时间(毫秒)
+     */
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 2000;
+
+    private final Class<MSG> packetClass;
+    /**
+     * 令牌桶容量
+     */
+    private final double capacity;
+    /**
+     * 每秒补充的令牌数
+     */
+    private final double refillPerSecond;
+    /**
+     * 每条消息消耗的令牌数
+     */
+    private volatile ToIntFunction<MSG> cost = msg -> 1;
+    private volatile EnumLimitAction action = EnumLimitAction.DROP;
+    private volatile long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+
+    @Getter(AccessLevel.NONE)
+    private final LongAdder accepted = new LongAdder();
+    @Getter(AccessLevel.NONE)
+    private final LongAdder delayed = new LongAdder();
+    @Getter(AccessLevel.NONE)
+    private final LongAdder dropped = new LongAdder();
+
+    InboundLimit(Class<MSG> packetClass, double capacity, double refillPerSecond) {
+        if (capacity <= 0 || refillPerSecond <= 0) {
+            throw new IllegalArgumentException("Capacity and refill rate must be positive: " + capacity + ", " + refillPerSecond);
+        }
+        this.packetClass = packetClass;
+        this.capacity = capacity;
+        this.refillPerSecond = refillPerSecond;
+    }
+
+    /**
+     * 设置每条消息固定消耗的令牌数
+     */
+    public InboundLimit<MSG> cost(int cost) {
+        return cost(msg -> cost);
+    }
+
+    /**
+     * 设置按消息内容计算的令牌消耗, 如按请求类型区分开销</br>
+     * 消耗为 0 的消息不受此规则限制, 总是立即处理
+     */
+    public InboundLimit<MSG> cost(ToIntFunction<MSG> cost) {
+        this.cost = cost;
+        return this;
+    }
+
+    /**
+     * 设置超出限制时的处理方式
+     */
+    public InboundLimit<MSG> action(EnumLimitAction action) {
+        this.action = action == null ? EnumLimitAction.DROP : action;
+        return this;
+    }
+
+    /**
+     * 设置 {@link EnumLimitAction#DELAY} 时的最长延后时间
+     */
+    public InboundLimit<MSG> maxDelayMillis(long maxDelayMillis) {
+        this.maxDelayMillis = Math.max(0, maxDelayMillis);
+        return this;
+    }
+
+    TokenBucket newBucket() {
+        return new TokenBucket(capacity, refillPerSecond);
+    }
+
+    /**
+     * 计算消息的处理时机
+     *
+     * @return 需要延后的纳秒数, 0 表示立即处理, -1 表示丢弃
+     */
+    long admit(TokenBucket bucket, MSG msg) {
+        int cost = Math.max(0, this.cost.applyAsInt(msg));
+        if (cost == 0) {
+            // 延后处理预约的令牌可使余量为负, 不能交由令牌桶判断
+            accepted.increment();
+            return 0;
+        }
+        long wait;
+        if (action == EnumLimitAction.DELAY) {
+            wait = bucket.reserve(cost, TimeUnit.MILLISECONDS.toNanos(maxDelayMillis));
+        } else {
+            wait = bucket.tryAcquire(cost) ? 0 : -1;
+        }
+        if (wait < 0) dropped.increment();
+        else if (wait > 0) delayed.increment();
+        else accepted.increment();
+        return wait;
+    }
+
+    public long getAccepted() {
+        return accepted.sum();
+    }
+
+    public long getDelayed() {
+        return delayed.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public void resetStatistics() {
+        accepted.reset();
+        delayed.reset();
+        dropped.reset();
+    }
+}
@@ -1,15 +1,35 @@
 package xin.vanilla.banira.common.network;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
 import lombok.Getter;
+import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.ResourceLocation;
 import net.minecraftforge.fml.network.NetworkEvent;
 import net.minecraftforge.fml.network.NetworkRegistry;
 import net.minecraftforge.fml.network.simple.SimpleChannel;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import xin.vanilla.banira.common.api.ResourceFactory;
+import xin.vanilla.banira.common.data.TokenBucket;
+import xin.vanilla.banira.common.network.packet.BundlePacket;
+import xin.vanilla.banira.common.network.packet.FragmentPacket;
+import xin.vanilla.banira.common.network.packet.RequestToBoth;
+import xin.vanilla.banira.common.network.packet.ResponseToBoth;
 import xin.vanilla.banira.common.network.packet.SplitPacket;
 
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Supplier;
 
@@ -17,12 +37,93 @@ import java.util.function.Supplier;
  * 网络处理器
  */
 public class NetworkHandler {
-    private static final String PROTOCOL_VERSION = "1";
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * 协议版本, 合批包、分片包、分包ID与请求包的格式变化后升为 2, 与 1 不兼容
+     */
+    private static final String PROTOCOL_VERSION = "2";
     private static int nextPacketId = 0;
+    /**
+     * 合批包保留的包ID, 不占用顺序分配的包ID, 以免改变已有消息的ID
+     */
+    private static final int BUNDLE_PACKET_ID = 255;
+    /**
+     * 默认分片大小(字节), 低于客户端发往服务端的自定义负载上限 32767
+     */
+    public static final int DEFAULT_FRAGMENT_SIZE = 30 * 1024;
+    /**
+     * 单条大消息序列化后的最大字节数, 同时是每个连接缓存未完成大消息的总量上限
+     */
+    public static final int MAX_LARGE_MESSAGE_BYTES = 16 * 1024 * 1024;
+    /**
+     * 每个连接同时重组的大消息数上限
+     */
+    public static final int MAX_PENDING_LARGE_MESSAGES = 16;
+
+    private static final List<NetworkHandler> HANDLERS = new CopyOnWriteArrayList<>();
 
+    @Getter
+    private final ResourceLocation name;
     @Getter
     private final SimpleChannel channel;
 
+    /**
+     * 通过 {@link #register} 注册的消息类型, 下标即合批包中的类型ID
+     */
+    private final List<MessageType<?>> messages = new ArrayList<>();
+    private final Map<Class<?>, Integer> messageTypes = new HashMap<>();
+    /**
+     * 大消息类型, 下标即类型ID
+     */
+    private final List<MessageType<?>> largeMessages = new ArrayList<>();
+    private final Map<Class<?>, Integer> largeMessageTypes = new HashMap<>();
+    private final AtomicLong nextMessageId = new AtomicLong(0);
+    /**
+     * 启用压缩的消息类型及其压缩器
+     */
+    private final Map<Class<?>, PayloadCompressor> compressors = new LinkedHashMap<>();
+    /**
+     * 每个连接的大消息分片重组缓冲区
+     */
+    private final AttributeKey<ReassemblyBuffer<ByteBuf>> fragmentBufferKey;
+    /**
+     * 每个连接的分包重组缓冲区
+     */
+    private final AttributeKey<ReassemblyBuffer<SplitPacket>> splitBufferKey;
+    /**
+     * 每个连接的流式分包接收记录
+     */
+    private final AttributeKey<ReassemblyBuffer<Boolean>> streamTrackerKey;
+    /**
+     * 按消息类型统计的发送与接收流量
+     */
+    private final Map<Class<?>, TrafficStatistics> outboundTraffic = new ConcurrentHashMap<>();
+    private final Map<Class<?>, TrafficStatistics> inboundTraffic = new ConcurrentHashMap<>();
+    /**
+     * 服务端入站消息的频率限制规则
+     */
+    private final Map<Class<?>, InboundLimit<?>> limits = new ConcurrentHashMap<>();
+    /**
+     * 每个连接的令牌桶
+     */
+    private final AttributeKey<Map<InboundLimit<?>, TokenBucket>> bucketKey;
+    /**
+     * 分片大小(字节)
+     */
+    @Getter
+    private int fragmentSize = DEFAULT_FRAGMENT_SIZE;
+    /**
+     * 发送合批器
+     */
+    @Getter
+    private final PacketBatcher batcher;
+    /**
+     * 请求/回复分发器
+     */
+    @Getter
+    private final RequestDispatcher requests;
+
     /**
      * 创建网络处理器实例
      *
@@ -31,17 +132,49 @@ public class NetworkHandler {
      * @return NetworkHandler 实例
      */
     public static NetworkHandler create(String channelName, ResourceFactory resourceFactory) {
+        ResourceLocation name = resourceFactory.create(channelName);
         SimpleChannel channel = NetworkRegistry.newSimpleChannel(
-                resourceFactory.create(channelName),
+                name,
                 () -> PROTOCOL_VERSION,
-                clientVersion -> true,      // 客户端版本始终有效
-                serverVersion -> true       // 服务端版本始终有效
+                NetworkHandler::isCompatibleVersion,    // 客户端版本
+                NetworkHandler::isCompatibleVersion     // 服务端版本
         );
-        return new NetworkHandler(channel);
+        return new NetworkHandler(name, channel);
+    }
+
+    /**
+     * 对端未安装本模组时仍允许连接, 安装了不同协议版本时拒绝连接
+     */
+    private static boolean isCompatibleVersion(String version) {
+        return PROTOCOL_VERSION.equals(version)
+                || NetworkRegistry.ABSENT.equals(version)
+                || NetworkRegistry.ACCEPTVANILLA.equals(version);
     }
 
-    private NetworkHandler(SimpleChannel channel) {
+    private NetworkHandler(ResourceLocation name, SimpleChannel channel) {
+        this.name = name;
         this.channel = channel;
+        this.fragmentBufferKey = AttributeKey.valueOf(name + "/fragments");
+        this.splitBufferKey = AttributeKey.valueOf(name + "/split");
+        this.streamTrackerKey = AttributeKey.valueOf(name + "/split-stream");
+        this.bucketKey = AttributeKey.valueOf(name + "/limits");
+        this.batcher = new PacketBatcher(this);
+        this.requests = new RequestDispatcher(this);
+        HANDLERS.add(this);
+        register(BUNDLE_PACKET_ID, BundlePacket.class, BundlePacket::toBytes, BundlePacket::new, this::handleBundle);
+    }
+
+    /**
+     * 设置分片大小</br>
+     * 接收端按本端分片大小推算单条消息的分片数上限, 通信双方应使用相同的分片大小
+     *
+     * @param fragmentSize 每个分片的负载字节数
+     */
+    public void setFragmentSize(int fragmentSize) {
+        if (fragmentSize <= 0 || fragmentSize > DEFAULT_FRAGMENT_SIZE) {
+            throw new IllegalArgumentException("Fragment size must be in (0, " + DEFAULT_FRAGMENT_SIZE + "]: " + fragmentSize);
+        }
+        this.fragmentSize = fragmentSize;
     }
 
     /**
@@ -57,12 +190,31 @@ public class NetworkHandler {
                                BiConsumer<MSG, PacketBuffer> encoder,
                                Function<PacketBuffer, MSG> decoder,
                                BiConsumer<MSG, Supplier<NetworkEvent.Context>> handler) {
+        if (nextPacketId >= BUNDLE_PACKET_ID) {
+            throw new IllegalStateException("Too many messages registered, packet id " + BUNDLE_PACKET_ID + " is reserved");
+        }
+        register(nextPacketId++, packetClass, encoder, decoder, handler);
+    }
+
+    private <MSG> void register(int packetId,
+                                Class<MSG> packetClass,
+                                BiConsumer<MSG, PacketBuffer> encoder,
+                                Function<PacketBuffer, MSG> decoder,
+                                BiConsumer<MSG, Supplier<NetworkEvent.Context>> handler) {
+        if (messageTypes.containsKey(packetClass)) {
+            throw new IllegalArgumentException("Message already registered: " + packetClass.getName());
+        }
+        messageTypes.put(packetClass, messages.size());
+        BiConsumer<MSG, PacketBuffer> measuredEncoder = measuredEncoder(encoder, traffic(packetClass, false));
+        Function<PacketBuffer, MSG> measuredDecoder = measuredDecoder(decoder, traffic(packetClass, true));
+        BiConsumer<MSG, Supplier<NetworkEvent.Context>> limitedHandler = limited(packetClass, handler);
+        messages.add(new MessageType<>(packetClass, measuredEncoder, measuredDecoder, limitedHandler));
         channel.registerMessage(
-                nextPacketId++,
+                packetId,
                 packetClass,
-                encoder,
-                decoder,
-                handler
+                measuredEncoder,
+                measuredDecoder,
+                limitedHandler
         );
     }
 
@@ -80,11 +232,32 @@ public class NetworkHandler {
             BiConsumer<MSG, PacketBuffer> encoder,
             Function<PacketBuffer, MSG> decoder,
             BiConsumer<MSG, Supplier<NetworkEvent.Context>> handler) {
+        registerSplit(packetClass, encoder, decoder, handler, null);
+    }
+
+    /**
+     * 注册网络包, 每个分包的负载超过压缩阈值时压缩后发送
+     *
+     * @param packetClass 包类
+     * @param encoder     编码器
+     * @param decoder     解码器
+     * @param handler     处理器
+     * @param compressor  负载压缩器, 为 null 时不压缩
+     * @param <MSG>       包类型
+     */
+    public <MSG extends SplitPacket> void registerSplit(
+            Class<MSG> packetClass,
+            BiConsumer<MSG, PacketBuffer> encoder,
+            Function<PacketBuffer, MSG> decoder,
+            BiConsumer<MSG, Supplier<NetworkEvent.Context>> handler,
+            PayloadCompressor compressor) {
+        TrafficStatistics inbound = traffic(packetClass, true);
         BiConsumer<MSG, Supplier<NetworkEvent.Context>> wrappedHandler = (packet, ctx) -> {
             // 保存原始上下文
             final Supplier<NetworkEvent.Context> contextSupplier = ctx;
             // 处理分包逻辑
-            List<MSG> completePackets = SplitPacket.handle(packet);
+            List<MSG> completePackets = SplitPacket.handle(packet, reassemblyBuffer(ctx.get(), splitBufferKey, SplitPacket::newReassemblyBuffer)
+                    , latency -> inbound.recordReassembly(packet.getTotal(), latency));
             if (completePackets != null && !completePackets.isEmpty()) {
                 // 所有分包已接收完成，合并并调用处理器
                 MSG mergedPacket = SplitPacket.merge(completePackets);
@@ -94,6 +267,480 @@ public class NetworkHandler {
             }
             ctx.get().setPacketHandled(true);
         };
-        register(packetClass, encoder, decoder, wrappedHandler);
+        if (compressor == null) {
+            register(packetClass, encoder, decoder, wrappedHandler);
+        } else {
+            compressors.put(packetClass, compressor);
+            register(packetClass, compressedEncoder(encoder, compressor), compressedDecoder(decoder, compressor), wrappedHandler);
+        }
+    }
+
+    /**
+     * 注册流式分包, 每个分包到达后立即交给处理器, 不缓存分包也不合并</br>
+     * 分包可能乱序到达, 重复或越界的分包被丢弃; 处理器在主线程执行
+     *
+     * @param packetClass 包类
+     * @param encoder     编码器
+     * @param decoder     解码器
+     * @param handler     流式处理器
+     * @param <MSG>       包类型
+     */
+    public <MSG extends SplitPacket> void registerSplitStreaming(
+            Class<MSG> packetClass,
+            BiConsumer<MSG, PacketBuffer> encoder,
+            Function<PacketBuffer, MSG> decoder,
+            SplitPacket.StreamHandler<MSG> handler) {
+        registerSplitStreaming(packetClass, encoder, decoder, handler, null);
+    }
+
+    /**
+     * 注册流式分包, 每个分包的负载超过压缩阈值时压缩后发送
+     *
+     * @param packetClass 包类
+     * @param encoder     编码器
+     * @param decoder     解码器
+     * @param handler     流式处理器
+     * @param compressor  负载压缩器, 为 null 时不压缩
+     * @param <MSG>       包类型
+     */
+    public <MSG extends SplitPacket> void registerSplitStreaming(
+            Class<MSG> packetClass,
+            BiConsumer<MSG, PacketBuffer> encoder,
+            Function<PacketBuffer, MSG> decoder,
+            SplitPacket.StreamHandler<MSG> handler,
+            PayloadCompressor compressor) {
+        TrafficStatistics inbound = traffic(packetClass, true);
+        BiConsumer<MSG, Supplier<NetworkEvent.Context>> wrappedHandler = (packet, ctx) -> {
+            ctx.get().setPacketHandled(true);
+            int state = SplitPacket.track(packet, reassemblyBuffer(ctx.get(), streamTrackerKey, SplitPacket::newStreamTracker)
+                    , latency -> inbound.recordReassembly(packet.getTotal(), latency));
+            if (state == ReassemblyBuffer.TRACK_DROPPED) return;
+            // 主线程任务按入队顺序执行, 完成回调总在最后一个分包之后
+            ctx.get().enqueueWork(() -> {
+                handler.onPacket(packet, ctx);
+                if (state == ReassemblyBuffer.TRACK_COMPLETE) {
+                    handler.onComplete(packet.getId(), packet.getTotal(), ctx);
+                }
+            });
+        };
+        if (compressor == null) {
+            register(packetClass, encoder, decoder, wrappedHandler);
+        } else {
+            compressors.put(packetClass, compressor);
+            register(packetClass, compressedEncoder(encoder, compressor), compressedDecoder(decoder, compressor), wrappedHandler);
+        }
+    }
+
+    private static <MSG> BiConsumer<MSG, PacketBuffer> compressedEncoder(BiConsumer<MSG, PacketBuffer> encoder, PayloadCompressor compressor) {
+        return (msg, buf) -> {
+            PacketBuffer raw = new PacketBuffer(Unpooled.buffer());
+            try {
+                encoder.accept(msg, raw);
+                compressor.write(buf, raw);
+            } finally {
+                raw.release();
+            }
+        };
+    }
+
+    /**
+     * 普通消息与分包在解码时无法区分方向, 单个分包受原版自定义负载大小限制, 解压后的大小由 {@link PayloadCompressor#MAX_DECOMPRESSED_SIZE} 限制
+     */
+    private static <MSG> Function<PacketBuffer, MSG> compressedDecoder(Function<PacketBuffer, MSG> decoder, PayloadCompressor compressor) {
+        return compressedDecoder(decoder, compressor, PayloadCompressor.MAX_DECOMPRESSED_SIZE);
+    }
+
+    private static <MSG> Function<PacketBuffer, MSG> compressedDecoder(Function<PacketBuffer, MSG> decoder, PayloadCompressor compressor, int maxSize) {
+        return buf -> {
+            ByteBuf raw = compressor.read(buf, maxSize);
+            try {
+                return decoder.apply(new PacketBuffer(raw));
+            } finally {
+                raw.release();
+            }
+        };
+    }
+
+    /**
+     * 获取启用压缩的消息类型及其压缩器
+     */
+    public Map<Class<?>, PayloadCompressor> getCompressors() {
+        return Collections.unmodifiableMap(compressors);
+    }
+
+    /**
+     * 注册大消息</br>
+     * 发送时整体序列化后按字节切分为分片({@link FragmentPacket}), 接收端收齐后再解码, 无需实现分包接口,
+     * 需通过 {@link xin.vanilla.banira.common.util.PacketUtils#sendLargePacket} 等方法发送
+     *
+     * @param packetClass 包类
+     * @param encoder     编码器
+     * @param decoder     解码器
+     * @param handler     处理器, 在网络线程调用
+     * @param <MSG>       包类型
+     */
+    public <MSG> void registerLarge(Class<MSG> packetClass,
+                                    BiConsumer<MSG, PacketBuffer> encoder,
+                                    Function<PacketBuffer, MSG> decoder,
+                                    BiConsumer<MSG, Supplier<NetworkEvent.Context>> handler) {
+        registerLarge(packetClass, encoder, decoder, handler, null);
+    }
+
+    /**
+     * 注册大消息, 整体负载超过压缩阈值时先压缩再分片
+     *
+     * @param compressor 负载压缩器, 为 null 时不压缩
+     * @see #registerLarge(Class, BiConsumer, Function, BiConsumer)
+     */
+    public <MSG> void registerLarge(Class<MSG> packetClass,
+                                    BiConsumer<MSG, PacketBuffer> encoder,
+                                    Function<PacketBuffer, MSG> decoder,
+                                    BiConsumer<MSG, Supplier<NetworkEvent.Context>> handler,
+                                    PayloadCompressor compressor) {
+        if (largeMessageTypes.containsKey(packetClass)) {
+            throw new IllegalArgumentException("Large message already registered: " + packetClass.getName());
+        }
+        if (largeMessages.isEmpty()) {
+            register(FragmentPacket.class, FragmentPacket::toBytes, FragmentPacket::new, this::handleFragment);
+        }
+        largeMessageTypes.put(packetClass, largeMessages.size());
+        Function<PacketBuffer, MSG> serverboundDecoder = decoder;
+        if (compressor != null) {
+            compressors.put(packetClass, compressor);
+            encoder = compressedEncoder(encoder, compressor);
+            // 服务端接收的大消息收齐后才解码, 此时可区分方向, 使用更小的解压上限
+            serverboundDecoder = compressedDecoder(decoder, compressor, PayloadCompressor.MAX_SERVERBOUND_DECOMPRESSED_SIZE);
+            decoder = compressedDecoder(decoder, compressor, PayloadCompressor.MAX_DECOMPRESSED_SIZE);
+        }
+        largeMessages.add(new MessageType<>(packetClass
+                , measuredEncoder(encoder, traffic(packetClass, false))
+                , measuredDecoder(decoder, traffic(packetClass, true))
+                , measuredDecoder(serverboundDecoder, traffic(packetClass, true))
+                , limited(packetClass, handler)));
+    }
+
+    // region 流量统计
+
+    private TrafficStatistics traffic(Class<?> packetClass, boolean inbound) {
+        return (inbound ? inboundTraffic : outboundTraffic).computeIfAbsent(packetClass, key -> new TrafficStatistics(key, inbound));
+    }
+
+    private static <MSG> BiConsumer<MSG, PacketBuffer> measuredEncoder(BiConsumer<MSG, PacketBuffer> encoder, TrafficStatistics statistics) {
+        return (msg, buf) -> {
+            int start = buf.writerIndex();
+            long begin = System.nanoTime();
+            encoder.accept(msg, buf);
+            statistics.record(buf.writerIndex() - start, System.nanoTime() - begin);
+        };
+    }
+
+    private static <MSG> Function<PacketBuffer, MSG> measuredDecoder(Function<PacketBuffer, MSG> decoder, TrafficStatistics statistics) {
+        return buf -> {
+            int start = buf.readerIndex();
+            long begin = System.nanoTime();
+            MSG msg = decoder.apply(buf);
+            statistics.record(buf.readerIndex() - start, System.nanoTime() - begin);
+            return msg;
+        };
+    }
+
+    /**
+     * 获取按消息类型与方向划分的流量统计</br>
+     * 合批包、分片包与其承载的消息分别统计, 前者反映实际传输, 后者反映各消息类型的开销
+     */
+    public List<TrafficStatistics> getTraffic() {
+        List<TrafficStatistics> result = new ArrayList<>(outboundTraffic.size() + inboundTraffic.size());
+        result.addAll(outboundTraffic.values());
+        result.addAll(inboundTraffic.values());
+        return result;
+    }
+
+    public void resetTraffic() {
+        outboundTraffic.values().forEach(TrafficStatistics::reset);
+        inboundTraffic.values().forEach(TrafficStatistics::reset);
+    }
+
+    /**
+     * 所有已创建的网络处理器
+     */
+    public static List<NetworkHandler> getHandlers() {
+        return Collections.unmodifiableList(HANDLERS);
+    }
+
+    // endregion
+
+    /**
+     * 为服务端收到的消息设置频率限制, 重复设置时替换原有规则</br>
+     * 对通过 {@link #registerLarge} 注册的消息, 限制作用于重组后的完整消息
+     *
+     * @param packetClass     包类
+     * @param capacity        令牌桶容量, 即每个玩家允许的突发量
+     * @param refillPerSecond 每秒补充的令牌数
+     * @return 限制规则, 可继续设置消耗、超限处理方式等
+     */
+    public <MSG> InboundLimit<MSG> limit(Class<MSG> packetClass, double capacity, double refillPerSecond) {
+        InboundLimit<MSG> limit = new InboundLimit<>(packetClass, capacity, refillPerSecond);
+        limits.put(packetClass, limit);
+        return limit;
+    }
+
+    /**
+     * 获取所有频率限制规则
+     */
+    public Collection<InboundLimit<?>> getLimits() {
+        return Collections.unmodifiableCollection(limits.values());
+    }
+
+    /**
+     * 包装处理器, 服务端收到消息时先按频率限制规则决定立即处理、延后处理或丢弃
+     */
+    @SuppressWarnings("unchecked")
+    private <MSG> BiConsumer<MSG, Supplier<NetworkEvent.Context>> limited(Class<MSG> packetClass, BiConsumer<MSG, Supplier<NetworkEvent.Context>> handler) {
+        return (msg, ctx) -> {
+            InboundLimit<MSG> limit = (InboundLimit<MSG>) limits.get(packetClass);
+            if (limit == null || !ctx.get().getDirection().getReceptionSide().isServer()) {
+                handler.accept(msg, ctx);
+                return;
+            }
+            Channel connection = ctx.get().getNetworkManager().channel();
+            Map<InboundLimit<?>, TokenBucket> buckets = connection.attr(bucketKey).get();
+            if (buckets == null) {
+                // 同一连接的消息均在其网络线程中处理
+                buckets = new IdentityHashMap<>();
+                connection.attr(bucketKey).set(buckets);
+            }
+            long wait = limit.admit(buckets.computeIfAbsent(limit, InboundLimit::newBucket), msg);
+            if (wait == 0) {
+                handler.accept(msg, ctx);
+                return;
+            }
+            ctx.get().setPacketHandled(true);
+            if (wait < 0) {
+                LOGGER.debug("Dropped {} from {} by rate limit", packetClass.getSimpleName(), connection.remoteAddress());
+                discard(msg);
+                return;
+            }
+            connection.eventLoop().schedule(() -> {
+                if (connection.isActive()) {
+                    handler.accept(msg, ctx);
+                } else {
+                    discard(msg);
+                }
+            }, wait, TimeUnit.NANOSECONDS);
+        };
+    }
+
+    /**
+     * 释放被丢弃消息持有的缓冲区
+     */
+    private static void discard(Object msg) {
+        if (msg instanceof FragmentPacket) {
+            ((FragmentPacket) msg).data().release();
+        } else if (msg instanceof BundlePacket) {
+            ((BundlePacket) msg).data().release();
+        }
+    }
+
+    /**
+     * 注册类型化请求</br>
+     * 首次调用时以大消息方式注册 {@link RequestToBoth} 与 {@link ResponseToBoth}, 请求与回复的大小不受单包上限限制;
+     * {@link RequestToBoth} 同时保留普通注册, 直接发送的简单请求仍可用, 未携带请求ID时交由 {@link RequestToBoth#registerHandler} 注册的处理器处理
+     *
+     * @param requestType     请求类型ID
+     * @param requestEncoder  请求编码器
+     * @param requestDecoder  请求解码器
+     * @param responseEncoder 回复编码器
+     * @param responseDecoder 回复解码器
+     * @param handler         服务端处理器, 在服务端主线程调用
+     * @return 请求类型, 可继续设置频率限制与超时时间
+     */
+    public <Q, R> RequestType<Q, R> registerRequest(int requestType,
+                                                    BiConsumer<Q, PacketBuffer> requestEncoder,
+                                                    Function<PacketBuffer, Q> requestDecoder,
+                                                    BiConsumer<R, PacketBuffer> responseEncoder,
+                                                    Function<PacketBuffer, R> responseDecoder,
+                                                    BiFunction<Q, ServerPlayerEntity, R> handler) {
+        if (requests.isEmpty()) {
+            if (!messageTypes.containsKey(RequestToBoth.class)) {
+                register(RequestToBoth.class, RequestToBoth::toBytes, RequestToBoth::new, requests::handleRequest);
+            }
+            registerLarge(RequestToBoth.class, RequestToBoth::toBytes, RequestToBoth::new, requests::handleRequest, new PayloadCompressor());
+            registerLarge(ResponseToBoth.class, ResponseToBoth::toBytes, ResponseToBoth::new, requests::handleResponse, new PayloadCompressor());
+        }
+        return requests.register(new RequestType<>(requestType, requestEncoder, requestDecoder, responseEncoder, responseDecoder, handler));
+    }
+
+    /**
+     * 向服务端发送类型化请求, 回复前内容相同的请求只发送一次
+     *
+     * @return 在客户端主线程完成的回复, 超时、被限流或处理失败时以异常完成
+     */
+    public <Q, R> CompletableFuture<R> request(RequestType<Q, R> type, Q request) {
+        return requests.request(type, request);
+    }
+
+    /**
+     * 取消所有等待回复的请求, 客户端断开连接时调用
+     */
+    public void cancelRequests() {
+        requests.cancelAll();
+    }
+
+    /**
+     * 获取大消息类型ID
+     */
+    public int getLargeMessageType(Class<?> packetClass) {
+        Integer type = largeMessageTypes.get(packetClass);
+        if (type == null) {
+            throw new IllegalArgumentException("Large message not registered: " + packetClass.getName());
+        }
+        return type;
+    }
+
+    /**
+     * 将大消息序列化至缓冲区
+     */
+    @SuppressWarnings("unchecked")
+    public <MSG> void encodeLarge(int type, MSG msg, PacketBuffer buf) {
+        ((MessageType<MSG>) largeMessages.get(type)).encoder.accept(msg, buf);
+    }
+
+    /**
+     * 生成新的消息ID
+     */
+    public long nextMessageId() {
+        return nextMessageId.incrementAndGet();
+    }
+
+    private void handleFragment(FragmentPacket packet, Supplier<NetworkEvent.Context> ctx) {
+        ctx.get().setPacketHandled(true);
+        if (packet.type() < 0 || packet.type() >= largeMessages.size()) {
+            LOGGER.debug("Dropped fragment of unknown large message type {}", packet.type());
+            packet.data().release();
+            return;
+        }
+        TrafficStatistics inbound = traffic(largeMessages.get(packet.type()).packetClass, true);
+        List<ByteBuf> parts = reassemblyBuffer(ctx.get(), fragmentBufferKey, this::newFragmentBuffer)
+                .accept(packet.messageId(), packet.index(), packet.total(), packet.data()
+                        , latency -> inbound.recordReassembly(packet.total(), latency));
+        if (parts == null) return;
+        ByteBuf payload = parts.size() == 1
+                ? parts.get(0)
+                : Unpooled.compositeBuffer(parts.size()).addComponents(true, parts);
+        try {
+            dispatch(largeMessages.get(packet.type()), payload, ctx);
+        } catch (Throwable t) {
+            LOGGER.error("Failed to decode large message {}", largeMessages.get(packet.type()).packetClass.getName(), t);
+        } finally {
+            payload.release();
+        }
+    }
+
+    private static <MSG> void dispatch(MessageType<MSG> message, ByteBuf payload, Supplier<NetworkEvent.Context> ctx) {
+        Function<PacketBuffer, MSG> decoder = ctx.get().getDirection().getReceptionSide().isServer()
+                ? message.serverboundDecoder
+                : message.decoder;
+        MSG msg = decoder.apply(new PacketBuffer(payload));
+        message.handler.accept(msg, ctx);
+    }
+
+    /**
+     * 大消息分片最多缓存 {@link #MAX_LARGE_MESSAGE_BYTES}, 单条消息的分片数不超过该大小按分片大小切分所得的数量
+     */
+    private ReassemblyBuffer<ByteBuf> newFragmentBuffer() {
+        int maxFragments = (MAX_LARGE_MESSAGE_BYTES + fragmentSize - 1) / fragmentSize;
+        return new ReassemblyBuffer<>(ReassemblyBuffer.DEFAULT_TIMEOUT_SECONDS, MAX_PENDING_LARGE_MESSAGES, maxFragments
+                , MAX_LARGE_MESSAGE_BYTES, ByteBuf::readableBytes, ByteBuf::release);
+    }
+
+    /**
+     * 获取当前连接的重组缓冲区, 连接关闭时释放未完成的消息
+     */
+    private static <T> ReassemblyBuffer<T> reassemblyBuffer(NetworkEvent.Context context, AttributeKey<ReassemblyBuffer<T>> key, Supplier<ReassemblyBuffer<T>> factory) {
+        Channel connection = context.getNetworkManager().channel();
+        Attribute<ReassemblyBuffer<T>> attribute = connection.attr(key);
+        ReassemblyBuffer<T> buffer = attribute.get();
+        if (buffer == null) {
+            ReassemblyBuffer<T> created = factory.get();
+            buffer = attribute.setIfAbsent(created);
+            if (buffer == null) {
+                buffer = created;
+                connection.closeFuture().addListener(future -> created.clear());
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * 获取已注册消息的合批类型ID
+     */
+    public int getMessageType(Class<?> packetClass) {
+        Integer type = messageTypes.get(packetClass);
+        if (type == null) {
+            throw new IllegalArgumentException("Message not registered: " + packetClass.getName());
+        }
+        return type;
+    }
+
+    /**
+     * 将已注册的消息序列化至缓冲区
+     */
+    @SuppressWarnings("unchecked")
+    public <MSG> void encodeMessage(int type, MSG msg, PacketBuffer buf) {
+        ((MessageType<MSG>) messages.get(type)).encoder.accept(msg, buf);
+    }
+
+    private void handleBundle(BundlePacket packet, Supplier<NetworkEvent.Context> ctx) {
+        ctx.get().setPacketHandled(true);
+        ByteBuf data = packet.data();
+        try {
+            for (int i = 0; i < packet.count() && data.isReadable(); i++) {
+                PacketBuffer buf = new PacketBuffer(data);
+                int type = buf.readVarInt();
+                int length = buf.readUnsignedMedium();
+                ByteBuf payload = buf.readSlice(length);
+                if (type < 0 || type >= messages.size() || messages.get(type).packetClass == BundlePacket.class) {
+                    LOGGER.debug("Dropped bundled message of unknown type {}", type);
+                    continue;
+                }
+                try {
+                    dispatch(messages.get(type), payload, ctx);
+                } catch (Throwable t) {
+                    LOGGER.error("Failed to handle bundled message {}", messages.get(type).packetClass.getName(), t);
+                }
+            }
+        } finally {
+            data.release();
+        }
+    }
+
+    private static final class MessageType<MSG> {
+        private final Class<MSG> packetClass;
+        private final BiConsumer<MSG, PacketBuffer> encoder;
+        private final Function<PacketBuffer, MSG> decoder;
+        /**
+         * 服务端接收时使用的解码器
+         */
+        private final Function<PacketBuffer, MSG> serverboundDecoder;
+        private final BiConsumer<MSG, Supplier<NetworkEvent.Context>> handler;
+
+        private MessageType(Class<MSG> packetClass,
+                             BiConsumer<MSG, PacketBuffer> encoder,
+                             Function<PacketBuffer, MSG> decoder,
+                             BiConsumer<MSG, Supplier<NetworkEvent.Context>> handler) {
+            this(packetClass, encoder, decoder, decoder, handler);
+        }
+
+        private MessageType(Class<MSG> packetClass,
+                             BiConsumer<MSG, PacketBuffer> encoder,
+                             Function<PacketBuffer, MSG> decoder,
+                             Function<PacketBuffer, MSG> serverboundDecoder,
+                             BiConsumer<MSG, Supplier<NetworkEvent.Context>> handler) {
+            this.packetClass = packetClass;
+            this.encoder = encoder;
+            this.decoder = decoder;
+            this.serverboundDecoder = serverboundDecoder;
+            this.handler = handler;
+        }
     }
 }
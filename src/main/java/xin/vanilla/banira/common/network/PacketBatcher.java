@@ -0,0 +1,286 @@
+package xin.vanilla.banira.common.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.event.TickEvent;
+import net.minecraftforge.eventbus.api.EventPriority;
+import net.minecraftforge.eventbus.api.SubscribeEvent;
+import net.minecraftforge.fml.event.server.FMLServerStoppedEvent;
+import net.minecraftforge.fml.network.PacketDistributor;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import xin.vanilla.banira.common.data.LongHistogram;
+import xin.vanilla.banira.common.network.packet.BundlePacket;
+
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 服务端发送合批器</br>
+ * 同一 tick 内排队发往同一目标的消息在 {@link TickEvent.ServerTickEvent} 结束阶段合并为 {@link BundlePacket} 发送,
+ * 每个目标只产生一次写入; 仅有一条消息的目标直接发送原消息</br>
+ * 同一目标内保持排队顺序, 发往单个玩家与发往所有玩家的队列之间、以及与立即发送的消息之间不保证顺序
+ */
+public final class PacketBatcher {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * 单个合批包的负载上限(字节), 放不下下一条消息时先发送当前合批包;
+     * 编码后超过该大小的消息不参与合批而直接发送, 因此合批包远小于原版自定义负载上限 1MiB, 长度字段也不会溢出
+     */
+    public static final int MAX_BUNDLE_BYTES = 64 * 1024;
+    /**
+     * 每条消息在合批包中的头部最大字节数: 类型ID(varint, 最多 5 字节) + 长度(3 字节)
+     */
+    private static final int ENTRY_HEADER_BYTES = 8;
+
+    private static final List<PacketBatcher> INSTANCES = new CopyOnWriteArrayList<>();
+
+    private final NetworkHandler handler;
+
+    /**
+     * 发往单个玩家的队列, 按首次排队顺序刷新
+     */
+    private Map<ServerPlayerEntity, List<Object>> playerQueues = new LinkedHashMap<>();
+    /**
+     * 发往所有玩家的队列
+     */
+    private List<Object> broadcastQueue = new ArrayList<>();
+
+    private final LongAdder queuedMessages = new LongAdder();
+    private final LongAdder bundledMessages = new LongAdder();
+    private final LongAdder directMessages = new LongAdder();
+    private final LongAdder bundles = new LongAdder();
+    /**
+     * 每个合批包包含的消息数
+     */
+    private final LongHistogram bundleSizes = new LongHistogram();
+    /**
+     * 每个合批包的负载字节数
+     */
+    private final LongHistogram bundleBytes = new LongHistogram();
+
+    PacketBatcher(NetworkHandler handler) {
+        this.handler = handler;
+        INSTANCES.add(this);
+    }
+
+    /**
+     * 排队发送至玩家, 在本 tick 结束时随其他排队消息一并发送
+     */
+    public synchronized void queue(ServerPlayerEntity player, Object msg) {
+        checkMessage(msg);
+        playerQueues.computeIfAbsent(player, key -> new ArrayList<>()).add(msg);
+        queuedMessages.increment();
+    }
+
+    /**
+     * 排队发送至所有玩家, 在本 tick 结束时随其他排队消息一并发送
+     */
+    public synchronized void queueToAll(Object msg) {
+        checkMessage(msg);
+        broadcastQueue.add(msg);
+        queuedMessages.increment();
+    }
+
+    private void checkMessage(Object msg) {
+        if (msg instanceof BundlePacket) {
+            throw new IllegalArgumentException("Bundle packets cannot be queued");
+        }
+        // 提前校验消息已注册, 避免在刷新时才失败
+        handler.getMessageType(msg.getClass());
+    }
+
+    /**
+     * 等待发送的消息数
+     */
+    public synchronized int pendingCount() {
+        int count = broadcastQueue.size();
+        for (List<Object> queue : playerQueues.values()) {
+            count += queue.size();
+        }
+        return count;
+    }
+
+    /**
+     * 立即发送所有排队的消息, 需在服务端主线程调用
+     */
+    public void flush() {
+        Map<ServerPlayerEntity, List<Object>> players;
+        List<Object> broadcast;
+        synchronized (this) {
+            if (playerQueues.isEmpty() && broadcastQueue.isEmpty()) return;
+            players = playerQueues;
+            broadcast = broadcastQueue;
+            playerQueues = new LinkedHashMap<>();
+            broadcastQueue = new ArrayList<>();
+        }
+        if (!broadcast.isEmpty()) {
+            send(PacketDistributor.ALL.noArg(), broadcast);
+        }
+        for (Map.Entry<ServerPlayerEntity, List<Object>> entry : players.entrySet()) {
+            ServerPlayerEntity player = entry.getKey();
+            if (player.hasDisconnected()) continue;
+            try {
+                send(PacketDistributor.PLAYER.with(() -> player), entry.getValue());
+            } catch (Throwable t) {
+                LOGGER.error("Failed to send queued packets to {}", player.getGameProfile().getName(), t);
+            }
+        }
+    }
+
+    private void send(PacketDistributor.PacketTarget target, List<Object> queue) {
+        if (queue.size() == 1) {
+            handler.getChannel().send(target, queue.get(0));
+            directMessages.increment();
+            return;
+        }
+        PacketBuffer buf = new PacketBuffer(Unpooled.buffer());
+        PacketBuffer encoded = new PacketBuffer(Unpooled.buffer());
+        int count = 0;
+        try {
+            for (Object msg : queue) {
+                int type;
+                encoded.clear();
+                try {
+                    type = handler.getMessageType(msg.getClass());
+                    handler.encodeMessage(type, msg, encoded);
+                } catch (Throwable t) {
+                    LOGGER.error("Failed to encode queued message {}", msg.getClass().getName(), t);
+                    continue;
+                }
+                int length = encoded.readableBytes();
+                // 放不下当前消息时先发送已合并的消息, 保持排队顺序
+                if (count > 0 && buf.readableBytes() + ENTRY_HEADER_BYTES + length > MAX_BUNDLE_BYTES) {
+                    sendBundle(target, count, buf);
+                    buf.clear();
+                    count = 0;
+                }
+                if (ENTRY_HEADER_BYTES + length > MAX_BUNDLE_BYTES) {
+                    handler.getChannel().send(target, msg);
+                    directMessages.increment();
+                    continue;
+                }
+                buf.writeVarInt(type);
+                buf.writeMedium(length);
+                buf.writeBytes(encoded, encoded.readerIndex(), length);
+                count++;
+            }
+            if (count > 0) {
+                sendBundle(target, count, buf);
+            }
+        } finally {
+            buf.release();
+            encoded.release();
+        }
+    }
+
+    private void sendBundle(PacketDistributor.PacketTarget target, int count, ByteBuf data) {
+        handler.getChannel().send(target, new BundlePacket(count, data));
+        bundles.increment();
+        bundledMessages.add(count);
+        bundleSizes.record(count);
+        bundleBytes.record(data.readableBytes());
+    }
+
+    /**
+     * 丢弃所有排队的消息
+     */
+    public synchronized void clear() {
+        playerQueues = new LinkedHashMap<>();
+        broadcastQueue = new ArrayList<>();
+    }
+
+    // region 统计
+
+    /**
+     * 排队的消息总数
+     */
+    public long getQueuedMessages() {
+        return queuedMessages.sum();
+    }
+
+    /**
+     * 经合批包发送的消息数
+     */
+    public long getBundledMessages() {
+        return bundledMessages.sum();
+    }
+
+    /**
+     * 因目标仅有一条消息而直接发送的消息数
+     */
+    public long getDirectMessages() {
+        return directMessages.sum();
+    }
+
+    /**
+     * 发送的合批包数
+     */
+    public long getBundles() {
+        return bundles.sum();
+    }
+
+    /**
+     * 合批节省的写入次数
+     */
+    public long getSavedWrites() {
+        return Math.max(0, getBundledMessages() - getBundles());
+    }
+
+    public LongHistogram getBundleSizes() {
+        return bundleSizes;
+    }
+
+    public LongHistogram getBundleBytes() {
+        return bundleBytes;
+    }
+
+    public void resetStatistics() {
+        queuedMessages.reset();
+        bundledMessages.reset();
+        directMessages.reset();
+        bundles.reset();
+        bundleSizes.reset();
+        bundleBytes.reset();
+    }
+
+    /**
+     * 所有网络处理器的合批器
+     */
+    public static List<PacketBatcher> getInstances() {
+        return Collections.unmodifiableList(INSTANCES);
+    }
+
+    public NetworkHandler getHandler() {
+        return handler;
+    }
+
+    // endregion
+
+    // region 事件
+
+    @SubscribeEvent(priority = EventPriority.LOWEST)
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase != TickEvent.Phase.END) return;
+        for (PacketBatcher batcher : INSTANCES) {
+            try {
+                batcher.flush();
+            } catch (Throwable t) {
+                LOGGER.error("Failed to flush queued packets of channel {}", batcher.handler.getName(), t);
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(FMLServerStoppedEvent event) {
+        for (PacketBatcher batcher : INSTANCES) {
+            batcher.clear();
+        }
+    }
+
+    // endregion
+}
@@ -0,0 +1,247 @@
+package xin.vanilla.banira.common.network;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.EncoderException;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import net.minecraft.network.PacketBuffer;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * 网络负载压缩器</br>
+ * 负载大于等于阈值时使用 Deflater 压缩, 并在负载前写入标记字节, 接收端据此判断是否需要解压;
+ * Deflater/Inflater 与临时缓冲区按线程复用</br>
+ * 解压时不按对端声明的长度预先分配, 输出缓冲区随实际解压出的字节增长, 声明长度仅作为上限
+ */
+@Accessors(fluent = true)
+public final class PayloadCompressor {
+    /**
+     * 默认压缩阈值(字节)
+     */
+    public static final int DEFAULT_THRESHOLD = 1024;
+    /**
+     * 解压后允许的最大字节数, 防止恶意负载占用内存
+     */
+    public static final int MAX_DECOMPRESSED_SIZE = 64 * 1024 * 1024;
+    /**
+     * 服务端接收客户端负载时解压后允许的最大字节数
+     */
+    public static final int MAX_SERVERBOUND_DECOMPRESSED_SIZE = 2 * 1024 * 1024;
+
+    private static final byte FLAG_RAW = 0;
+    private static final byte FLAG_DEFLATE = 1;
+    private static final int SCRATCH_SIZE = 8192;
+
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[SCRATCH_SIZE]);
+    private static final ThreadLocal<Inflater> INFLATER = ThreadLocal.withInitial(Inflater::new);
+
+    private final ThreadLocal<Deflater> deflater;
+
+    /**
+     * 压缩阈值(字节), 小于该值的负载不压缩
+     */
+    @Getter
+    private volatile int threshold;
+
+    /**
+     * 压缩前字节数
+     */
+    private final LongAdder rawBytes = new LongAdder();
+    /**
+     * 压缩后(即实际写出的)字节数
+     */
+    private final LongAdder encodedBytes = new LongAdder();
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder compressedMessages = new LongAdder();
+
+    public PayloadCompressor() {
+        this(DEFAULT_THRESHOLD);
+    }
+
+    public PayloadCompressor(int threshold) {
+        this(threshold, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param threshold 压缩阈值(字节)
+     * @param level     压缩等级, 见 {@link Deflater}
+     */
+    public PayloadCompressor(int threshold, int level) {
+        this.threshold = Math.max(0, threshold);
+        this.deflater = ThreadLocal.withInitial(() -> new Deflater(level));
+    }
+
+    public void threshold(int threshold) {
+        this.threshold = Math.max(0, threshold);
+    }
+
+    /**
+     * 写入标记字节及(可能压缩后的)负载
+     *
+     * @param out 输出缓冲区
+     * @param raw 原始负载, 读取其全部可读字节, 不改变读索引
+     */
+    public void write(ByteBuf out, ByteBuf raw) {
+        int length = raw.readableBytes();
+        int start = out.writerIndex();
+        messages.increment();
+        rawBytes.add(length);
+        if (length >= threshold && length > 0) {
+            out.writeByte(FLAG_DEFLATE);
+            new PacketBuffer(out).writeVarInt(length);
+            deflate(raw, out);
+            // 压缩无收益时改为原样写出
+            if (out.writerIndex() - start - 1 >= length) {
+                out.writerIndex(start);
+            } else {
+                compressedMessages.increment();
+                encodedBytes.add(out.writerIndex() - start);
+                return;
+            }
+        }
+        out.writeByte(FLAG_RAW);
+        out.writeBytes(raw, raw.readerIndex(), length);
+        encodedBytes.add(out.writerIndex() - start);
+    }
+
+    /**
+     * 读取标记字节及负载, 读取输入缓冲区的全部剩余字节
+     *
+     * @return 解压后的负载, 需由调用方释放
+     */
+    public ByteBuf read(ByteBuf in) {
+        return read(in, MAX_DECOMPRESSED_SIZE);
+    }
+
+    /**
+     * 读取标记字节及负载, 读取输入缓冲区的全部剩余字节
+     *
+     * @param maxSize 解压后允许的最大字节数
+     * @return 解压后的负载, 需由调用方释放
+     */
+    public ByteBuf read(ByteBuf in, int maxSize) {
+        byte flag = in.readByte();
+        if (flag == FLAG_RAW) {
+            return in.readRetainedSlice(in.readableBytes());
+        }
+        if (flag != FLAG_DEFLATE) {
+            throw new DecoderException("Unknown payload compression flag: " + flag);
+        }
+        int length = new PacketBuffer(in).readVarInt();
+        if (length < 0 || length > Math.min(maxSize, MAX_DECOMPRESSED_SIZE)) {
+            throw new DecoderException("Decompressed payload size out of range: " + length);
+        }
+        // 按压缩后大小估算初始容量, 不信任对端声明的长度
+        ByteBuf out = Unpooled.buffer(Math.min(length, Math.max(SCRATCH_SIZE, in.readableBytes() * 4)), length);
+        try {
+            inflate(in, out, length);
+            return out;
+        } catch (Throwable t) {
+            out.release();
+            throw t;
+        }
+    }
+
+    private void deflate(ByteBuf raw, ByteBuf out) {
+        Deflater deflater = this.deflater.get();
+        byte[] scratch = SCRATCH.get();
+        try {
+            if (raw.hasArray()) {
+                deflater.setInput(raw.array(), raw.arrayOffset() + raw.readerIndex(), raw.readableBytes());
+            } else {
+                byte[] input = new byte[raw.readableBytes()];
+                raw.getBytes(raw.readerIndex(), input);
+                deflater.setInput(input);
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                int count = deflater.deflate(scratch);
+                out.writeBytes(scratch, 0, count);
+            }
+        } catch (RuntimeException e) {
+            throw new EncoderException("Failed to compress payload", e);
+        } finally {
+            deflater.reset();
+        }
+    }
+
+    private static void inflate(ByteBuf in, ByteBuf out, int length) {
+        Inflater inflater = INFLATER.get();
+        try {
+            int available = in.readableBytes();
+            if (in.hasArray()) {
+                inflater.setInput(in.array(), in.arrayOffset() + in.readerIndex(), available);
+            } else {
+                byte[] input = new byte[available];
+                in.getBytes(in.readerIndex(), input);
+                inflater.setInput(input);
+            }
+            byte[] scratch = SCRATCH.get();
+            while (!inflater.finished()) {
+                int count = inflater.inflate(scratch);
+                if (count == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                if (out.writerIndex() + count > length) {
+                    throw new DecoderException("Compressed payload is larger than declared size " + length);
+                }
+                out.writeBytes(scratch, 0, count);
+            }
+            if (out.writerIndex() != length || !inflater.finished()) {
+                throw new DecoderException("Compressed payload is truncated, expected size " + length);
+            }
+            in.skipBytes(available - inflater.getRemaining());
+        } catch (DataFormatException e) {
+            throw new DecoderException("Malformed compressed payload", e);
+        } finally {
+            inflater.reset();
+        }
+    }
+
+    // region 统计
+
+    /**
+     * 压缩前累计字节数
+     */
+    public long rawBytes() {
+        return rawBytes.sum();
+    }
+
+    /**
+     * 实际写出的累计字节数(含标记字节)
+     */
+    public long encodedBytes() {
+        return encodedBytes.sum();
+    }
+
+    public long messages() {
+        return messages.sum();
+    }
+
+    public long compressedMessages() {
+        return compressedMessages.sum();
+    }
+
+    /**
+     * 写出字节数与原始字节数之比
+     */
+    public double ratio() {
+        long raw = rawBytes();
+        return raw == 0 ? 1 : (double) encodedBytes() / raw;
+    }
+
+    public void resetStatistics() {
+        rawBytes.reset();
+        encodedBytes.reset();
+        messages.reset();
+        compressedMessages.reset();
+    }
+
+    // endregion
+}
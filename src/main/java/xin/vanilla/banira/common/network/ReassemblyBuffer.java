@@ -0,0 +1,284 @@
+package xin.vanilla.banira.common.network;
+
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * 单个连接的分片重组缓冲区</br>
+ * 以 long 消息ID 索引, 按总分片数预分配槽位, 丢弃重复或越界的分片;
+ * 未完成的消息按创建时间挂入以秒为刻度的时间轮, 超时后整体释放;
+ * 同时限制未完成消息数与缓存总量, 超出限制的消息直接丢弃
+ *
+ * @param <T> 分片类型
+ */
+public final class ReassemblyBuffer<T> {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * 默认超时时间(秒)
+     */
+    public static final int DEFAULT_TIMEOUT_SECONDS = 60;
+    public static final int DEFAULT_MAX_PENDING = 32;
+    /**
+     * 单条消息允许的最大分片数
+     */
+    public static final int DEFAULT_MAX_FRAGMENTS = 4096;
+
+    public static final int TRACK_DROPPED = -1;
+    public static final int TRACK_PENDING = 0;
+    public static final int TRACK_COMPLETE = 1;
+
+    private static final Object DROPPED = new Object();
+
+    // region 全局统计
+
+    private static final LongAdder DUPLICATES = new LongAdder();
+    private static final LongAdder OUT_OF_RANGE = new LongAdder();
+    private static final LongAdder EXPIRED = new LongAdder();
+    private static final LongAdder REJECTED = new LongAdder();
+
+    // endregion
+
+    private final int timeoutSeconds;
+    private final int maxPending;
+    private final int maxFragments;
+    private final long maxWeight;
+    private final ToIntFunction<? super T> weigher;
+    private final Consumer<? super T> releaser;
+
+    private final Long2ObjectMap<Pending> pending = new Long2ObjectOpenHashMap<>();
+    /**
+     * 按创建时间(秒)分桶的消息ID, 槽位数大于超时秒数, 每个槽位同一时间只对应一秒
+     */
+    private final LongArrayList[] wheel;
+    private long wheelSecond = Long.MIN_VALUE;
+    private long weight;
+
+    /**
+     * @param maxWeight 未完成消息的缓存总量上限, 单位由 weigher 决定
+     * @param weigher   分片的缓存量
+     * @param releaser  丢弃分片时的释放操作
+     */
+    public ReassemblyBuffer(long maxWeight, ToIntFunction<? super T> weigher, Consumer<? super T> releaser) {
+        this(DEFAULT_TIMEOUT_SECONDS, DEFAULT_MAX_PENDING, DEFAULT_MAX_FRAGMENTS, maxWeight, weigher, releaser);
+    }
+
+    public ReassemblyBuffer(int timeoutSeconds, int maxPending, int maxFragments, long maxWeight
+            , ToIntFunction<? super T> weigher, Consumer<? super T> releaser) {
+        this.timeoutSeconds = Math.max(1, timeoutSeconds);
+        this.maxPending = Math.max(1, maxPending);
+        this.maxFragments = Math.max(1, maxFragments);
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+        this.releaser = releaser;
+        this.wheel = new LongArrayList[this.timeoutSeconds + 1];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new LongArrayList();
+        }
+    }
+
+    /**
+     * 接收分片
+     *
+     * @param id    消息ID
+     * @param index 分片序号
+     * @param total 总分片数
+     * @return 收齐后按序号排列的全部分片, 尚未收齐或分片被丢弃时返回 null
+     */
+    public List<T> accept(long id, int index, int total, T part) {
+        return accept(id, index, total, part, null);
+    }
+
+    /**
+     * 接收分片
+     *
+     * @param id      消息ID
+     * @param index   分片序号
+     * @param total   总分片数
+     * @param latency 收齐时以首个分片到收齐的耗时(纳秒)回调, 可为 null
+     * @return 收齐后按序号排列的全部分片, 尚未收齐或分片被丢弃时返回 null
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized List<T> accept(long id, int index, int total, T part, LongConsumer latency) {
+        Object result = offer(id, index, total, part, latency);
+        return result == DROPPED ? null : (List<T>) result;
+    }
+
+    /**
+     * 仅登记分片序号而不缓存分片本身, 用于分片到达即处理的流式接收
+     *
+     * @param marker  登记在槽位中的占位对象, 丢弃时同样交给 releaser
+     * @param latency 收齐时以首个分片到收齐的耗时(纳秒)回调, 可为 null
+     * @return {@link #TRACK_DROPPED} 分片重复、越界或被拒绝; {@link #TRACK_PENDING} 已登记, 尚未收齐;
+     * {@link #TRACK_COMPLETE} 已登记且全部收齐
+     */
+    public synchronized int track(long id, int index, int total, T marker, LongConsumer latency) {
+        Object result = offer(id, index, total, marker, latency);
+        return result == DROPPED ? TRACK_DROPPED : result == null ? TRACK_PENDING : TRACK_COMPLETE;
+    }
+
+    /**
+     * @return 收齐后的全部分片, 尚未收齐时返回 null, 分片被丢弃时返回 {@link #DROPPED}
+     */
+    private Object offer(long id, int index, int total, T part, LongConsumer latency) {
+        long nanoTime = System.nanoTime();
+        long now = TimeUnit.NANOSECONDS.toSeconds(nanoTime);
+        expire(now);
+        if (total <= 0 || total > maxFragments || index < 0 || index >= total) {
+            OUT_OF_RANGE.increment();
+            LOGGER.debug("Dropped fragment {}/{} of message {}", index, total, id);
+            releaser.accept(part);
+            return DROPPED;
+        }
+        if (total == 1) {
+            if (latency != null) latency.accept(0);
+            return Collections.singletonList(part);
+        }
+        Pending message = pending.get(id);
+        if (message == null) {
+            if (pending.size() >= maxPending) {
+                REJECTED.increment();
+                LOGGER.debug("Dropped message {}: too many pending messages", id);
+                releaser.accept(part);
+                return DROPPED;
+            }
+            message = new Pending(total, now, nanoTime);
+            pending.put(id, message);
+            wheel[slot(now)].add(id);
+        } else if (message.parts.length != total) {
+            OUT_OF_RANGE.increment();
+            LOGGER.debug("Dropped fragment {}/{} of message {}: expected total {}", index, total, id, message.parts.length);
+            releaser.accept(part);
+            return DROPPED;
+        }
+        if (message.parts[index] != null) {
+            DUPLICATES.increment();
+            releaser.accept(part);
+            return DROPPED;
+        }
+        int partWeight = weigher.applyAsInt(part);
+        if (weight + partWeight > maxWeight) {
+            REJECTED.increment();
+            LOGGER.debug("Dropped message {}: reassembly buffer is full", id);
+            releaser.accept(part);
+            remove(id);
+            return DROPPED;
+        }
+        message.parts[index] = part;
+        message.weight += partWeight;
+        weight += partWeight;
+        if (++message.received < total) {
+            return null;
+        }
+        pending.remove(id);
+        weight -= message.weight;
+        if (latency != null) latency.accept(nanoTime - message.createdNanos);
+        return Arrays.asList(message.parts);
+    }
+
+    /**
+     * 释放所有未完成的消息
+     */
+    public synchronized void clear() {
+        for (Pending message : pending.values()) {
+            message.release();
+        }
+        pending.clear();
+        for (LongArrayList ids : wheel) {
+            ids.clear();
+        }
+        weight = 0;
+    }
+
+    /**
+     * 未完成的消息数
+     */
+    public synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 释放超时的消息, 每个槽位在其对应的秒数超时后整体检查一次
+     */
+    private void expire(long now) {
+        if (wheelSecond == Long.MIN_VALUE || now - wheelSecond > wheel.length) {
+            wheelSecond = now - timeoutSeconds - 1;
+        }
+        // 处理创建时间不晚于 now - timeoutSeconds 的槽位
+        while (wheelSecond < now - timeoutSeconds) {
+            wheelSecond++;
+            LongArrayList ids = wheel[slot(wheelSecond)];
+            for (int i = 0; i < ids.size(); i++) {
+                long id = ids.getLong(i);
+                Pending message = pending.get(id);
+                if (message != null && message.createdSecond <= wheelSecond) {
+                    EXPIRED.increment();
+                    LOGGER.debug("Expired incomplete message {} ({}/{} fragments)", id, message.received, message.parts.length);
+                    remove(id);
+                }
+            }
+            ids.clear();
+        }
+    }
+
+    private void remove(long id) {
+        Pending message = pending.remove(id);
+        if (message != null) {
+            weight -= message.weight;
+            message.release();
+        }
+    }
+
+    private int slot(long second) {
+        return (int) Math.floorMod(second, (long) wheel.length);
+    }
+
+    public static long getDuplicateCount() {
+        return DUPLICATES.sum();
+    }
+
+    public static long getOutOfRangeCount() {
+        return OUT_OF_RANGE.sum();
+    }
+
+    public static long getExpiredCount() {
+        return EXPIRED.sum();
+    }
+
+    public static long getRejectedCount() {
+        return REJECTED.sum();
+    }
+
+    private final class Pending {
+        private final Object[] parts;
+        private final long createdSecond;
+        private final long createdNanos;
+        private int received;
+        private long weight;
+
+        private Pending(int total, long createdSecond, long createdNanos) {
+            this.parts = new Object[total];
+            this.createdSecond = createdSecond;
+            this.createdNanos = createdNanos;
+        }
+
+        @SuppressWarnings("unchecked")
+        private void release() {
+            for (Object part : parts) {
+                if (part != null) releaser.accept((T) part);
+            }
+        }
+    }
+}
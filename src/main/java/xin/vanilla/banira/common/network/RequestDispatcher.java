@@ -0,0 +1,279 @@
+package xin.vanilla.banira.common.network;
+
+import io.netty.buffer.Unpooled;
+import io.netty.util.AttributeKey;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.network.PacketBuffer;
+import net.minecraft.util.concurrent.ThreadTaskExecutor;
+import net.minecraftforge.fml.LogicalSide;
+import net.minecraftforge.fml.LogicalSidedProvider;
+import net.minecraftforge.fml.network.NetworkEvent;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import xin.vanilla.banira.common.data.TokenBucket;
+import xin.vanilla.banira.common.network.packet.RequestToBoth;
+import xin.vanilla.banira.common.network.packet.ResponseToBoth;
+import xin.vanilla.banira.common.util.PacketUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * 请求/回复分发器</br>
+ * 客户端发出的请求携带请求ID, 服务端处理后回复同一ID; 内容相同的请求在回复前只发送一次,
+ * 服务端按玩家与请求类型以令牌桶限制每秒请求数
+ */
+public final class RequestDispatcher {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    /**
+     * 请求超时计时线程, 所有网络处理器共用
+     */
+    private static final ScheduledExecutorService TIMEOUT = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "banira-request-timeout");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final NetworkHandler handler;
+    private final Map<Integer, RequestType<?, ?>> types = new ConcurrentHashMap<>();
+    private final AtomicLong nextRequestId = new AtomicLong(0);
+    /**
+     * 等待回复的请求
+     */
+    private final Map<Long, PendingRequest<?>> pending = new ConcurrentHashMap<>();
+    /**
+     * 内容相同的进行中请求
+     */
+    private final Map<RequestKey, PendingRequest<?>> inFlight = new ConcurrentHashMap<>();
+    /**
+     * 每个连接的请求频率计数
+     */
+    private final AttributeKey<Map<Integer, TokenBucket>> rateKey;
+
+    RequestDispatcher(NetworkHandler handler) {
+        this.handler = handler;
+        this.rateKey = AttributeKey.valueOf(handler.getName() + "/requests");
+    }
+
+    boolean isEmpty() {
+        return types.isEmpty();
+    }
+
+    <Q, R> RequestType<Q, R> register(RequestType<Q, R> type) {
+        if (types.putIfAbsent(type.id(), type) != null) {
+            throw new IllegalArgumentException("Request type already registered: " + type.id());
+        }
+        return type;
+    }
+
+    /**
+     * 向服务端发送请求
+     *
+     * @return 在客户端主线程完成的回复, 超时或被拒绝时以异常完成
+     */
+    @SuppressWarnings("unchecked")
+    public <Q, R> CompletableFuture<R> request(RequestType<Q, R> type, Q request) {
+        if (types.get(type.id()) != type) {
+            throw new IllegalArgumentException("Request type not registered: " + type.id());
+        }
+        PacketBuffer buf = new PacketBuffer(Unpooled.buffer());
+        byte[] payload;
+        try {
+            type.requestEncoder().accept(request, buf);
+            payload = new byte[buf.readableBytes()];
+            buf.readBytes(payload);
+        } finally {
+            buf.release();
+        }
+        RequestKey key = new RequestKey(type.id(), payload);
+        PendingRequest<R> created = new PendingRequest<>(nextRequestId.incrementAndGet(), type, key);
+        PendingRequest<?> existing;
+        while ((existing = inFlight.putIfAbsent(key, created)) != null) {
+            if (!existing.future.isDone()) {
+                return ((PendingRequest<R>) existing).future;
+            }
+            // 已被调用方取消的请求不再复用
+            inFlight.remove(key, existing);
+        }
+        pending.put(created.requestId, created);
+        TIMEOUT.schedule(() -> {
+            if (pending.remove(created.requestId) != null) {
+                inFlight.remove(key, created);
+                TimeoutException timeout = new TimeoutException("Request " + type.id() + " timed out after " + type.timeoutMillis() + "ms");
+                runOnClient(() -> created.future.completeExceptionally(timeout));
+            }
+        }, type.timeoutMillis(), TimeUnit.MILLISECONDS);
+        try {
+            PacketUtils.sendLargePacketToServer(handler, new RequestToBoth(type.id(), created.requestId, payload));
+        } catch (Throwable t) {
+            pending.remove(created.requestId);
+            inFlight.remove(key, created);
+            runOnClient(() -> created.future.completeExceptionally(t));
+        }
+        return created.future;
+    }
+
+    /**
+     * 在客户端主线程执行
+     */
+    private static void runOnClient(Runnable task) {
+        ThreadTaskExecutor<?> executor = LogicalSidedProvider.WORKQUEUE.get(LogicalSide.CLIENT);
+        executor.execute(task);
+    }
+
+    /**
+     * 取消所有等待回复的请求, 断开连接时调用, 之后的请求不会复用上一次连接中的请求
+     */
+    public void cancelAll() {
+        inFlight.clear();
+        for (Long requestId : pending.keySet()) {
+            PendingRequest<?> request = pending.remove(requestId);
+            if (request != null) {
+                request.future.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * 等待回复的请求数
+     */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    void handleRequest(RequestToBoth packet, Supplier<NetworkEvent.Context> ctx) {
+        if (packet.getRequestId() == 0) {
+            RequestToBoth.handle(packet, ctx);
+            return;
+        }
+        ctx.get().setPacketHandled(true);
+        ServerPlayerEntity player = ctx.get().getSender();
+        if (player == null) return;
+        RequestType<?, ?> type = types.get(packet.getRequestType());
+        if (type == null) {
+            respond(player, new ResponseToBoth(packet.getRequestId(), ResponseToBoth.STATUS_UNKNOWN, null));
+            return;
+        }
+        if (!tryAcquire(ctx.get(), type)) {
+            respond(player, new ResponseToBoth(packet.getRequestId(), ResponseToBoth.STATUS_RATE_LIMITED, null));
+            return;
+        }
+        ctx.get().enqueueWork(() -> respond(player, process(type, packet, player)));
+    }
+
+    private static <Q, R> ResponseToBoth process(RequestType<Q, R> type, RequestToBoth packet, ServerPlayerEntity player) {
+        PacketBuffer buf = new PacketBuffer(Unpooled.buffer());
+        try {
+            Q request = type.requestDecoder().apply(new PacketBuffer(Unpooled.wrappedBuffer(packet.getPayload())));
+            R response = type.handler().apply(request, player);
+            type.responseEncoder().accept(response, buf);
+            byte[] payload = new byte[buf.readableBytes()];
+            buf.readBytes(payload);
+            return new ResponseToBoth(packet.getRequestId(), ResponseToBoth.STATUS_OK, payload);
+        } catch (Throwable t) {
+            LOGGER.error("Failed to handle request {} from {}", type.id(), player.getGameProfile().getName(), t);
+            String message = String.valueOf(t.getMessage());
+            return new ResponseToBoth(packet.getRequestId(), ResponseToBoth.STATUS_ERROR, message.getBytes(StandardCharsets.UTF_8));
+        } finally {
+            buf.release();
+        }
+    }
+
+    private void respond(ServerPlayerEntity player, ResponseToBoth response) {
+        PacketUtils.sendLargePacketToPlayer(handler, response, player);
+    }
+
+    /**
+     * 按请求类型的令牌桶限制请求数, 同一连接的请求均在其网络线程中处理
+     */
+    private boolean tryAcquire(NetworkEvent.Context context, RequestType<?, ?> type) {
+        int limit = type.rateLimit();
+        if (limit <= 0) return true;
+        Map<Integer, TokenBucket> buckets = context.getNetworkManager().channel().attr(rateKey).get();
+        if (buckets == null) {
+            buckets = new HashMap<>();
+            context.getNetworkManager().channel().attr(rateKey).set(buckets);
+        }
+        return buckets.computeIfAbsent(type.id(), id -> new TokenBucket(limit, limit)).tryAcquire(1);
+    }
+
+    void handleResponse(ResponseToBoth packet, Supplier<NetworkEvent.Context> ctx) {
+        ctx.get().setPacketHandled(true);
+        PendingRequest<?> request = pending.remove(packet.getRequestId());
+        if (request == null) {
+            LOGGER.debug("Dropped response of unknown or expired request {}", packet.getRequestId());
+            return;
+        }
+        inFlight.remove(request.key, request);
+        ctx.get().enqueueWork(() -> request.complete(packet));
+    }
+
+    private static final class PendingRequest<R> {
+        private final long requestId;
+        private final RequestType<?, R> type;
+        private final RequestKey key;
+        private final CompletableFuture<R> future = new CompletableFuture<>();
+
+        private PendingRequest(long requestId, RequestType<?, R> type, RequestKey key) {
+            this.requestId = requestId;
+            this.type = type;
+            this.key = key;
+        }
+
+        private void complete(ResponseToBoth response) {
+            switch (response.getStatus()) {
+                case ResponseToBoth.STATUS_OK:
+                    try {
+                        future.complete(type.responseDecoder().apply(new PacketBuffer(Unpooled.wrappedBuffer(response.getPayload()))));
+                    } catch (Throwable t) {
+                        future.completeExceptionally(t);
+                    }
+                    break;
+                case ResponseToBoth.STATUS_UNKNOWN:
+                    future.completeExceptionally(new IllegalStateException("Request type not registered on server: " + type.id()));
+                    break;
+                case ResponseToBoth.STATUS_RATE_LIMITED:
+                    future.completeExceptionally(new IllegalStateException("Request " + type.id() + " rejected by rate limit"));
+                    break;
+                default:
+                    future.completeExceptionally(new IllegalStateException("Request " + type.id() + " failed: "
+                            + new String(response.getPayload(), StandardCharsets.UTF_8)));
+                    break;
+            }
+        }
+    }
+
+    /**
+     * 请求类型与负载内容相同的请求视为同一请求
+     */
+    private static final class RequestKey {
+        private final int type;
+        private final byte[] payload;
+        private final int hash;
+
+        private RequestKey(int type, byte[] payload) {
+            this.type = type;
+            this.payload = payload;
+            this.hash = 31 * type + Arrays.hashCode(payload);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof RequestKey)) return false;
+            RequestKey that = (RequestKey) o;
+            return type == that.type && Arrays.equals(payload, that.payload);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package xin.vanilla.banira.common.network;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.network.PacketBuffer;
+
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * 类型化请求, 由 {@link NetworkHandler#registerRequest} 注册
+ *
+ * @param <Q> 请求类型
+ * @param <R> 回复类型
+ */
+@Getter
+@Accessors(fluent = true)
+public final class RequestType<Q, R> {
+    /**
+     * 默认超时时间(毫秒)
+     */
+    public static final long DEFAULT_TIMEOUT_MILLIS = 10_000;
+
+    private final int id;
+    private final BiConsumer<Q, PacketBuffer> requestEncoder;
+    private final Function<PacketBuffer, Q> requestDecoder;
+    private final BiConsumer<R, PacketBuffer> responseEncoder;
+    private final Function<PacketBuffer, R> responseDecoder;
+    /**
+     * 服务端处理器, 在服务端主线程调用
+     */
+    private final BiFunction<Q, ServerPlayerEntity, R> handler;
+    /**
+     * 每个玩家每秒允许的请求数, 同时也是允许的突发量, 0 表示不限制
+     */
+    private volatile int rateLimit = 0;
+    /**
+     * 客户端等待回复的超时时间(毫秒)
+     */
+    private volatile long timeoutMillis = DEFAULT_TIMEOUT_MILLIS;
+
+    RequestType(int id,
+                BiConsumer<Q, PacketBuffer> requestEncoder,
+                Function<PacketBuffer, Q> requestDecoder,
+                BiConsumer<R, PacketBuffer> responseEncoder,
+                Function<PacketBuffer, R> responseDecoder,
+                BiFunction<Q, ServerPlayerEntity, R> handler) {
+        this.id = id;
+        this.requestEncoder = requestEncoder;
+        this.requestDecoder = requestDecoder;
+        this.responseEncoder = responseEncoder;
+        this.responseDecoder = responseDecoder;
+        this.handler = handler;
+    }
+
+    /**
+     * 设置每个玩家每秒允许的请求数
+     *
+     * @param rateLimit 0 表示不限制
+     */
+    public RequestType<Q, R> rateLimit(int rateLimit) {
+        this.rateLimit = Math.max(0, rateLimit);
+        return this;
+    }
+
+    /**
+     * 设置客户端等待回复的超时时间
+     */
+    public RequestType<Q, R> timeoutMillis(long timeoutMillis) {
+        this.timeoutMillis = Math.max(1, timeoutMillis);
+        return this;
+    }
+}
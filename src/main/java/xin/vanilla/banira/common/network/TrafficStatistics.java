@@ -0,0 +1,56 @@
+package xin.vanilla.banira.common.network;
+
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import xin.vanilla.banira.common.data.RollingHistogram;
+
+/**
+ * 单个消息类型在单个方向上的流量统计, 累计值与最近 1 分钟的分布均可查询
+ */
+@Getter
+@Accessors(fluent = true)
+public final class TrafficStatistics {
+    private final Class<?> packetClass;
+    /**
+     * true 为接收(解码), false 为发送(编码)
+     */
+    private final boolean inbound;
+    /**
+     * 每条消息的字节数, 其计数即消息数, 总和即总字节数
+     */
+    private final RollingHistogram bytes = new RollingHistogram();
+    /**
+     * 每条消息的编码或解码耗时(纳秒)
+     */
+    private final RollingHistogram nanos = new RollingHistogram();
+    /**
+     * 分片消息每条完整消息的分片数, 仅接收方向
+     */
+    private final RollingHistogram fragments = new RollingHistogram();
+    /**
+     * 分片消息从收到首个分片到收齐的耗时(纳秒), 仅接收方向
+     */
+    private final RollingHistogram reassemblyNanos = new RollingHistogram();
+
+    TrafficStatistics(Class<?> packetClass, boolean inbound) {
+        this.packetClass = packetClass;
+        this.inbound = inbound;
+    }
+
+    void record(int bytes, long nanos) {
+        this.bytes.record(bytes);
+        this.nanos.record(nanos);
+    }
+
+    void recordReassembly(int fragments, long nanos) {
+        this.fragments.record(fragments);
+        this.reassemblyNanos.record(nanos);
+    }
+
+    public void reset() {
+        bytes.reset();
+        nanos.reset();
+        fragments.reset();
+        reassemblyNanos.reset();
+    }
+}
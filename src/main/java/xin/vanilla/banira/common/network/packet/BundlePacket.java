@@ -0,0 +1,39 @@
+package xin.vanilla.banira.common.network.packet;
+
+import io.netty.buffer.ByteBuf;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * 合批包</br>
+ * 由 {@link xin.vanilla.banira.common.network.PacketBatcher} 将同一 tick 内发往同一目标的多条消息合并为一个包发送,
+ * 每条消息依次写为 类型ID(varint) + 长度(3字节) + 数据
+ */
+@Getter
+@Accessors(fluent = true)
+public final class BundlePacket {
+    /**
+     * 包含的消息数
+     */
+    private final int count;
+    /**
+     * 消息数据, 发送端由发送方持有, 接收端为持有引用的切片, 需由接收方释放
+     */
+    private final ByteBuf data;
+
+    public BundlePacket(int count, ByteBuf data) {
+        this.count = count;
+        this.data = data;
+    }
+
+    public BundlePacket(PacketBuffer buf) {
+        this.count = buf.readVarInt();
+        this.data = buf.readRetainedSlice(buf.readableBytes());
+    }
+
+    public void toBytes(PacketBuffer buf) {
+        buf.writeVarInt(this.count);
+        buf.writeBytes(this.data, this.data.readerIndex(), this.data.readableBytes());
+    }
+}
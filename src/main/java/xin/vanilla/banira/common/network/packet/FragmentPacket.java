@@ -0,0 +1,60 @@
+package xin.vanilla.banira.common.network.packet;
+
+import io.netty.buffer.ByteBuf;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * 字节分片包</br>
+ * 由 {@link xin.vanilla.banira.common.network.NetworkHandler#registerLarge} 注册的消息先整体序列化,
+ * 再按固定字节数切分为若干分片发送, 接收端按序号拼接后再解码
+ */
+@Getter
+@Accessors(fluent = true)
+public final class FragmentPacket {
+    /**
+     * 消息ID, 同一消息的所有分片相同
+     */
+    private final long messageId;
+    /**
+     * 消息类型ID
+     */
+    private final int type;
+    /**
+     * 当前分片序号
+     */
+    private final int index;
+    /**
+     * 总分片数
+     */
+    private final int total;
+    /**
+     * 分片数据, 发送端为完整负载的切片, 接收端为持有引用的切片, 需由接收方释放
+     */
+    private final ByteBuf data;
+
+    public FragmentPacket(long messageId, int type, int index, int total, ByteBuf data) {
+        this.messageId = messageId;
+        this.type = type;
+        this.index = index;
+        this.total = total;
+        this.data = data;
+    }
+
+    public FragmentPacket(PacketBuffer buf) {
+        this.messageId = buf.readVarLong();
+        this.type = buf.readVarInt();
+        this.index = buf.readVarInt();
+        this.total = buf.readVarInt();
+        this.data = buf.readRetainedSlice(buf.readableBytes());
+    }
+
+    public void toBytes(PacketBuffer buf) {
+        buf.writeVarLong(this.messageId);
+        buf.writeVarInt(this.type);
+        buf.writeVarInt(this.index);
+        buf.writeVarInt(this.total);
+        buf.writeBytes(this.data, this.data.readerIndex(), this.data.readableBytes());
+    }
+}
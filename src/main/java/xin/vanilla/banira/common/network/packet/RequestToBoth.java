@@ -5,25 +5,37 @@ import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.network.PacketBuffer;
 import net.minecraftforge.fml.network.NetworkEvent;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 
 /**
- * 请求数据同步包
+ * 请求数据同步包</br>
+ * 请求ID为 0 时为无需回复的简单请求, 由 {@link #registerHandler} 注册的处理器处理;
+ * 否则为 {@link xin.vanilla.banira.common.network.NetworkHandler#request} 发出的类型化请求, 负载为请求对象序列化后的字节
  */
 @Getter
 public class RequestToBoth {
+    private static final byte[] EMPTY = new byte[0];
+
     /**
      * 请求类型ID到处理器的映射
      */
-    private static final Map<Integer, BiConsumer<RequestToBoth, ServerPlayerEntity>> handlers = new HashMap<>();
+    private static final Map<Integer, BiConsumer<RequestToBoth, ServerPlayerEntity>> handlers = new ConcurrentHashMap<>();
 
     /**
      * 请求包的类型ID
      */
     private int requestType;
+    /**
+     * 请求ID, 回复包据此关联请求
+     */
+    private long requestId;
+    /**
+     * 请求负载
+     */
+    private byte[] payload = EMPTY;
 
     public RequestToBoth() {
     }
@@ -32,12 +44,27 @@ public class RequestToBoth {
         this.requestType = requestType;
     }
 
+    public RequestToBoth(int requestType, long requestId, byte[] payload) {
+        this.requestType = requestType;
+        this.requestId = requestId;
+        this.payload = payload == null ? EMPTY : payload;
+    }
+
     public RequestToBoth(PacketBuffer buf) {
         this.requestType = buf.readVarInt();
+        if (buf.isReadable()) {
+            this.requestId = buf.readVarLong();
+            this.payload = new byte[buf.readableBytes()];
+            buf.readBytes(this.payload);
+        }
     }
 
     public void toBytes(PacketBuffer buf) {
         buf.writeVarInt(this.requestType);
+        if (this.requestId != 0) {
+            buf.writeVarLong(this.requestId);
+            buf.writeBytes(this.payload);
+        }
     }
 
     /**
@@ -0,0 +1,50 @@
+package xin.vanilla.banira.common.network.packet;
+
+import lombok.Getter;
+import net.minecraft.network.PacketBuffer;
+
+/**
+ * 请求回复包, 通过请求ID关联 {@link RequestToBoth}
+ */
+@Getter
+public class ResponseToBoth {
+    /**
+     * 处理成功, 负载为回复对象序列化后的字节
+     */
+    public static final int STATUS_OK = 0;
+    /**
+     * 未注册的请求类型
+     */
+    public static final int STATUS_UNKNOWN = 1;
+    /**
+     * 超出请求频率限制
+     */
+    public static final int STATUS_RATE_LIMITED = 2;
+    /**
+     * 处理失败, 负载为错误信息
+     */
+    public static final int STATUS_ERROR = 3;
+
+    private final long requestId;
+    private final int status;
+    private final byte[] payload;
+
+    public ResponseToBoth(long requestId, int status, byte[] payload) {
+        this.requestId = requestId;
+        this.status = status;
+        this.payload = payload == null ? new byte[0] : payload;
+    }
+
+    public ResponseToBoth(PacketBuffer buf) {
+        this.requestId = buf.readVarLong();
+        this.status = buf.readByte();
+        this.payload = new byte[buf.readableBytes()];
+        buf.readBytes(this.payload);
+    }
+
+    public void toBytes(PacketBuffer buf) {
+        buf.writeVarLong(this.requestId);
+        buf.writeByte(this.status);
+        buf.writeBytes(this.payload);
+    }
+}
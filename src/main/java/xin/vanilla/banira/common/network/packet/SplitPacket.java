@@ -1,23 +1,49 @@
 package xin.vanilla.banira.common.network.packet;
 
+import io.netty.channel.Channel;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.Setter;
+import lombok.ToString;
 import net.minecraft.network.PacketBuffer;
-import xin.vanilla.banira.common.util.PacketUtils;
+import net.minecraftforge.fml.network.NetworkEvent;
+import xin.vanilla.banira.common.network.NetworkHandler;
+import xin.vanilla.banira.common.network.ReassemblyBuffer;
 
-import java.util.*;
-import java.util.stream.Collectors;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
 
 /**
- * 分包数据包
+ * 分包数据包</br>
+ * 分包ID已由字符串改为 long 并以 VarLong 传输, 与 1.0.0 的分包格式不兼容;
+ * {@link #getId()} 的返回类型随之改变, 旧代码可改用 {@link #getIdString()}
  */
 @Data
 public abstract class SplitPacket {
-    private static final Random random = new Random();
+    /**
+     * 分包ID生成器, 以随机数为起点避免重启后与对端残留的未完成分包冲突
+     */
+    private static final AtomicLong nextId = new AtomicLong(new Random().nextLong());
+    /**
+     * 未指定连接时使用的全局重组缓冲区
+     */
+    private static final ReassemblyBuffer<SplitPacket> globalBuffer = newReassemblyBuffer();
+    /**
+     * 通过 {@link #handle(SplitPacket, Supplier)} 处理分包时每个连接的重组缓冲区
+     */
+    private static final AttributeKey<ReassemblyBuffer<SplitPacket>> BUFFER_KEY = AttributeKey.valueOf("banira_codex:split");
 
     /**
      * 分包ID
      */
-    private String id;
+    private long id;
     /**
      * 总包数
      */
@@ -26,52 +52,150 @@ public abstract class SplitPacket {
      * 当前包序号
      */
     private int sort;
+    /**
+     * 接收时的编码字节数, 用于限制重组缓冲区的缓存总量, 发送端为 0
+     */
+    @Setter(AccessLevel.NONE)
+    @EqualsAndHashCode.Exclude
+    @ToString.Exclude
+    private int encodedSize;
 
     protected SplitPacket() {
-        this.id = String.format("%d.%d", System.currentTimeMillis(), random.nextInt(999999999));
+        this.id = nextId.incrementAndGet();
     }
 
     protected SplitPacket(PacketBuffer buf) {
-        this.id = buf.readUtf();
+        this.encodedSize = buf.readableBytes();
+        this.id = buf.readVarLong();
         this.total = buf.readInt();
         this.sort = buf.readInt();
     }
 
+    /**
+     * 创建分包重组缓冲区, 每个连接一个, 按分包的编码字节数最多缓存 {@link NetworkHandler#MAX_LARGE_MESSAGE_BYTES}
+     */
+    public static ReassemblyBuffer<SplitPacket> newReassemblyBuffer() {
+        return new ReassemblyBuffer<>(NetworkHandler.MAX_LARGE_MESSAGE_BYTES, packet -> Math.max(1, packet.encodedSize), packet -> {
+        });
+    }
+
+    /**
+     * 旧版本的字符串分包ID
+     *
+     * @deprecated 分包ID已改为 long, 请使用 {@link #getId()}
+     */
+    @Deprecated
+    public String getIdString() {
+        return String.valueOf(id);
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    /**
+     * 以字符串设置分包ID, 非数字的ID按 FNV-1a 散列为 long
+     *
+     * @deprecated 分包ID已改为 long, 请使用 {@link #setId(long)}
+     */
+    @Deprecated
+    public void setId(String id) {
+        try {
+            this.id = Long.parseLong(id);
+        } catch (NumberFormatException e) {
+            long hash = 0xcbf29ce484222325L;
+            for (int i = 0; i < id.length(); i++) {
+                hash ^= id.charAt(i);
+                hash *= 0x100000001b3L;
+            }
+            this.id = hash;
+        }
+    }
+
+    /**
+     * 创建流式分包的接收记录, 每个连接一个</br>
+     * 只登记已处理的分包序号, 不缓存分包本身
+     */
+    public static ReassemblyBuffer<Boolean> newStreamTracker() {
+        return new ReassemblyBuffer<>(Long.MAX_VALUE, marker -> 0, marker -> {
+        });
+    }
+
+    /**
+     * 登记流式接收的分包
+     *
+     * @param packet  接收到的分包
+     * @param tracker 当前连接的接收记录
+     * @param latency 收齐时以首个分包到收齐的耗时(纳秒)回调, 可为 null
+     * @return {@link ReassemblyBuffer#TRACK_DROPPED} 重复或越界的分包, 不应再处理;
+     * {@link ReassemblyBuffer#TRACK_PENDING} 新分包, 尚未收齐; {@link ReassemblyBuffer#TRACK_COMPLETE} 新分包且已收齐
+     */
+    public static int track(SplitPacket packet, ReassemblyBuffer<Boolean> tracker, LongConsumer latency) {
+        return tracker.track(packet.getId(), packet.getSort(), packet.getTotal(), Boolean.TRUE, latency);
+    }
+
     /**
      * 处理接收到的分包
      *
      * @param packet 接收到的分包
      * @param <T>    分包类型
      * @return 完整的包列表，若还未接收完所有分包则返回空列表
+     * @deprecated 所有连接共用同一缓冲区, 一个连接可占满缓冲区并挤掉其他连接的分包,
+     * 请使用 {@link #handle(SplitPacket, Supplier)} 或 {@link #handle(SplitPacket, ReassemblyBuffer)}
      */
+    @Deprecated
     public static <T extends SplitPacket> List<T> handle(T packet) {
-        List<T> result = new ArrayList<>();
-        Map<String, List<? extends SplitPacket>> packetCache = PacketUtils.packetCache();
-        @SuppressWarnings("unchecked")
-        List<T> splitPackets = (List<T>) packetCache.computeIfAbsent(packet.getId(), k -> new ArrayList<>());
-        splitPackets.add(packet);
-        if (splitPackets.size() == packet.getTotal()) {
-            result = splitPackets.stream()
-                    .sorted(Comparator.comparingInt(SplitPacket::getSort))
-                    .collect(Collectors.toList());
-            // 清理缓存
-            packetCache.remove(packet.getId());
-            // 清理过时缓存(超过5分钟)
-            PacketUtils.packetCache().keySet().stream()
-                    .filter(key -> {
-                        String[] parts = key.split("\\.");
-                        if (parts.length > 0) {
-                            try {
-                                return Math.abs(System.currentTimeMillis() - Long.parseLong(parts[0])) > 1000 * 60 * 5;
-                            } catch (NumberFormatException e) {
-                                return false;
-                            }
-                        }
-                        return false;
-                    })
-                    .forEach(packetCache::remove);
+        return handle(packet, globalBuffer);
+    }
+
+    /**
+     * 处理接收到的分包, 使用分包所属连接的重组缓冲区, 连接关闭时释放未完成的分包
+     *
+     * @param packet 接收到的分包
+     * @param ctx    网络上下文
+     * @param <T>    分包类型
+     * @return 按序号排列的完整包列表，若还未接收完所有分包或分包被丢弃则返回空列表
+     */
+    public static <T extends SplitPacket> List<T> handle(T packet, Supplier<NetworkEvent.Context> ctx) {
+        Channel connection = ctx.get().getNetworkManager().channel();
+        Attribute<ReassemblyBuffer<SplitPacket>> attribute = connection.attr(BUFFER_KEY);
+        ReassemblyBuffer<SplitPacket> buffer = attribute.get();
+        if (buffer == null) {
+            ReassemblyBuffer<SplitPacket> created = newReassemblyBuffer();
+            buffer = attribute.setIfAbsent(created);
+            if (buffer == null) {
+                buffer = created;
+                connection.closeFuture().addListener(future -> created.clear());
+            }
         }
-        return result;
+        return handle(packet, buffer);
+    }
+
+    /**
+     * 处理接收到的分包
+     *
+     * @param packet 接收到的分包
+     * @param buffer 当前连接的重组缓冲区
+     * @param <T>    分包类型
+     * @return 按序号排列的完整包列表，若还未接收完所有分包或分包被丢弃则返回空列表
+     */
+    public static <T extends SplitPacket> List<T> handle(T packet, ReassemblyBuffer<SplitPacket> buffer) {
+        return handle(packet, buffer, null);
+    }
+
+    /**
+     * 处理接收到的分包
+     *
+     * @param packet  接收到的分包
+     * @param buffer  当前连接的重组缓冲区
+     * @param latency 收齐时以首个分包到收齐的耗时(纳秒)回调, 可为 null
+     * @param <T>     分包类型
+     * @return 按序号排列的完整包列表，若还未接收完所有分包或分包被丢弃则返回空列表
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends SplitPacket> List<T> handle(T packet, ReassemblyBuffer<SplitPacket> buffer, LongConsumer latency) {
+        List<SplitPacket> packets = buffer.accept(packet.getId(), packet.getSort(), packet.getTotal(), packet, latency);
+        return packets == null ? Collections.emptyList() : (List<T>) (List<?>) packets;
     }
 
     /**
@@ -110,7 +234,7 @@ public abstract class SplitPacket {
     }
 
     protected void toBytes(PacketBuffer buf) {
-        buf.writeUtf(id);
+        buf.writeVarLong(id);
         buf.writeInt(total);
         buf.writeInt(sort);
     }
@@ -144,4 +268,27 @@ public abstract class SplitPacket {
          */
         List<T> splitPacket();
     }
+
+    /**
+     * 流式分包处理器, 分包到达即处理, 不等待收齐也不合并
+     */
+    public interface StreamHandler<T extends SplitPacket> {
+        /**
+         * 处理一个分包, 分包可能乱序到达, 同一分包只回调一次
+         *
+         * @param packet 分包
+         * @param ctx    网络上下文
+         */
+        void onPacket(T packet, Supplier<NetworkEvent.Context> ctx);
+
+        /**
+         * 同一ID的全部分包均已处理
+         *
+         * @param id    分包ID
+         * @param total 总包数
+         * @param ctx   网络上下文
+         */
+        default void onComplete(long id, int total, Supplier<NetworkEvent.Context> ctx) {
+        }
+    }
 }
@@ -0,0 +1,124 @@
+package xin.vanilla.banira.common.player;
+
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.CompressedStreamTools;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import xin.vanilla.banira.common.api.IPlayerDataStorage;
+import xin.vanilla.banira.common.util.NBTUtils;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+/**
+ * 每个玩家一个 {@code <uuid>.nbt} 文件的存储后端</br>
+ * 先写入 .tmp 再经 .bak 替换原文件, 替换失败时回滚
+ */
+public final class FilePlayerDataStorage implements IPlayerDataStorage {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    private static final String EXTENSION = ".nbt";
+
+    private final Supplier<Path> directory;
+
+    /**
+     * @param directory 延迟提供存储目录
+     */
+    public FilePlayerDataStorage(Supplier<Path> directory) {
+        this.directory = directory;
+    }
+
+    @Nullable
+    @Override
+    public CompoundNBT read(UUID playerUuid) throws IOException {
+        File file = getPlayerDataFile(playerUuid);
+        if (!file.exists()) return null;
+        return CompressedStreamTools.readCompressed(file);
+    }
+
+    @Override
+    public void write(UUID playerUuid, CompoundNBT root) throws IOException {
+        atomicWrite(root, getPlayerDataFile(playerUuid));
+    }
+
+    @Override
+    public Collection<UUID> list() throws IOException {
+        List<UUID> result = new ArrayList<>();
+        Path dir = directory.get();
+        if (!Files.isDirectory(dir)) return result;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*" + EXTENSION)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                try {
+                    result.add(UUID.fromString(name.substring(0, name.length() - EXTENSION.length())));
+                } catch (IllegalArgumentException ignored) {
+                }
+            }
+        }
+        return result;
+    }
+
+    private File getPlayerDataFile(UUID uuid) {
+        File dir = directory.get().toFile();
+        if (!dir.exists()) {
+            if (!dir.mkdirs()) {
+                LOGGER.debug("FilePlayerDataStorage could not create dir: {}", dir.getAbsolutePath());
+            }
+        }
+        return new File(dir, uuid + EXTENSION);
+    }
+
+    private static void atomicWrite(CompoundNBT root, File target) throws IOException {
+        File dir = target.getParentFile();
+        File tmpFile = new File(dir, target.getName() + ".tmp");
+        File bakFile = new File(dir, target.getName() + ".bak");
+
+        boolean written = NBTUtils.writeCompressed(root, tmpFile);
+        if (!written) throw new IOException("Failed to write temp file: " + tmpFile.getAbsolutePath());
+
+        try {
+            if (target.exists()) {
+                try {
+                    Files.move(target.toPath(), bakFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } catch (IOException ex) {
+                    Files.move(target.toPath(), bakFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        } catch (Exception e) {
+            LOGGER.warn("FilePlayerDataStorage failed to move original to bak: {} -> {}. Error: {}",
+                    target.getAbsolutePath(), bakFile.getAbsolutePath(), e.getMessage());
+        }
+
+        try {
+            try {
+                Files.move(tmpFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException ex) {
+                Files.move(tmpFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } catch (Exception e) {
+            LOGGER.error("FilePlayerDataStorage failed to move tmp to target: {} -> {}. Error: {}",
+                    tmpFile.getAbsolutePath(), target.getAbsolutePath(), e.getMessage());
+            if (bakFile.exists()) {
+                try {
+                    Files.move(bakFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+                    LOGGER.warn("FilePlayerDataStorage rollback: restored bak to target {}", target.getAbsolutePath());
+                } catch (Exception rex) {
+                    LOGGER.error("FilePlayerDataStorage rollback failed for target: {} (bak: {})", target.getAbsolutePath(), bakFile.getAbsolutePath());
+                }
+            }
+            if (tmpFile.exists()) tmpFile.delete();
+            throw e;
+        }
+    }
+
+}
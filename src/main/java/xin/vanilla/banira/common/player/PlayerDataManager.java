@@ -3,22 +3,27 @@ package xin.vanilla.banira.common.player;
 import net.minecraft.nbt.CompoundNBT;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import xin.vanilla.banira.common.util.NBTUtils;
+import xin.vanilla.banira.common.api.IPlayerDataStorage;
+import xin.vanilla.banira.common.data.StripedExecutor;
 
 import javax.annotation.Nullable;
-import java.io.File;
-import java.io.IOException;
+import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
-import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
 import java.util.function.Supplier;
 
 /**
- * 玩家数据管理
+ * 玩家数据管理</br>
+ * 设置缓存上限后, 未固定的玩家可能被淘汰, 此前返回的节点随之失效, 对其的修改不会再被保存;
+ * 应固定在线玩家, 或每次使用前重新调用 {@link #getOrCreate} 获取
  */
 public final class PlayerDataManager {
     private static final Logger LOGGER = LogManager.getLogger();
@@ -26,18 +31,93 @@ public final class PlayerDataManager {
     // suffix -> instance
     private static final Map<String, PlayerDataManager> INSTANCES = new ConcurrentHashMap<>();
 
+    /**
+     * 后台写入线程, 所有实例共用
+     */
+    private static final StripedExecutor IO_EXECUTOR = new StripedExecutor("BaniraCodex-PlayerData-IO", 1);
+    /**
+     * 批量扫描的并行度
+     */
+    public static final int SCAN_PARALLELISM = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    /**
+     * 批量扫描线程池, 所有实例共用
+     */
+    private static final ExecutorService SCAN_EXECUTOR = Executors.newFixedThreadPool(SCAN_PARALLELISM, new ThreadFactory() {
+        private final AtomicInteger threadIndex = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "BaniraCodex-PlayerData-Scan-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+    /**
+     * 默认等待后台写入完成的最长时间(秒)
+     */
+    public static final long DEFAULT_FLUSH_TIMEOUT_SECONDS = 30;
+    /**
+     * 默认缓存的玩家数上限, 即不限制</br>
+     * 淘汰会使调用方持有的节点失效, 须由实例的使用者在固定在线玩家后主动开启
+     */
+    public static final int DEFAULT_MAX_CACHED_PLAYERS = 0;
+    /**
+     * 迁移到区域文件存储完成后写入存储目录的标记文件
+     */
+    private static final String REGION_MIGRATED_MARKER = "region.migrated";
+    /**
+     * 玩家锁分段数, 须为 2 的幂
+     */
+    private static final int PLAYER_LOCK_STRIPES = 64;
+
     private final Supplier<Path> playerDataDirSupplier;
     private final String modId;
     private final String suffix;
+    /**
+     * 存储后端
+     */
+    private volatile IPlayerDataStorage storage;
 
     // 实例的缓存与锁
     private final Map<UUID, CachedPlayerData> playerCache = new ConcurrentHashMap<>();
-    private final Map<Path, ReentrantLock> fileLocks = new ConcurrentHashMap<>();
+    /**
+     * 按玩家分段的存储读写锁, 数量固定, 不随玩家数增长
+     */
+    private final ReentrantLock[] playerLocks = new ReentrantLock[PLAYER_LOCK_STRIPES];
+    /**
+     * 常驻缓存、不参与淘汰的玩家, 通常为在线玩家
+     */
+    private final Set<UUID> pinned = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    /**
+     * 缓存的玩家数上限, 不大于 0 时不限制
+     */
+    private volatile int maxCachedPlayers = DEFAULT_MAX_CACHED_PLAYERS;
+
+    // region 缓存统计
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    // endregion
+    /**
+     * 等待后台写入的快照, 同一玩家的多次保存只保留最新一份
+     */
+    private final Map<UUID, CompoundNBT> pendingWrites = new ConcurrentHashMap<>();
+    /**
+     * 是否在后台线程压缩并写入
+     */
+    private volatile boolean writeBehind = false;
 
     private PlayerDataManager(Supplier<Path> playerDataDirSupplier, String modId, String suffix) {
         this.playerDataDirSupplier = playerDataDirSupplier;
         this.modId = modId;
         this.suffix = sanitizeSuffix(suffix);
+        this.storage = new FilePlayerDataStorage(this::getStorageDirectory);
+        for (int i = 0; i < playerLocks.length; i++) {
+            playerLocks[i] = new ReentrantLock();
+        }
     }
 
 
@@ -68,7 +148,10 @@ public final class PlayerDataManager {
      */
     public static void removeInstance(String suffix) {
         String key = sanitizeSuffixStatic(suffix);
-        INSTANCES.remove(key);
+        PlayerDataManager instance = INSTANCES.remove(key);
+        if (instance != null && !instance.close()) {
+            LOGGER.warn("PlayerDataManager[{}] pending writes did not finish within {} seconds", key, DEFAULT_FLUSH_TIMEOUT_SECONDS);
+        }
         LOGGER.info("Removed PlayerDataManager instance for suffix '{}'", key);
     }
 
@@ -76,16 +159,254 @@ public final class PlayerDataManager {
     private static final class CachedPlayerData {
         volatile CompoundNBT root;
         volatile boolean dirty = false;
+        /**
+         * 已移出缓存, 持有此引用的调用方需重新加载
+         */
+        volatile boolean evicted = false;
+        volatile long lastAccess = System.nanoTime();
+        /**
+         * 已交出引用的 mod 节点及其上次保存时的内容哈希, 保存时比对以判断节点是否被修改
+         */
+        final Map<String, Long> nodeHashes = new HashMap<>();
 
         CachedPlayerData(CompoundNBT root) {
             this.root = root;
         }
     }
 
+    /**
+     * 当前实例的存储目录, 即 {@code world/playerdata/<suffix>}
+     */
+    public Path getStorageDirectory() {
+        return playerDataDirSupplier.get().resolve(suffix);
+    }
+
+    public IPlayerDataStorage getStorage() {
+        return storage;
+    }
+
+    /**
+     * 切换存储后端, 切换前写出并等待所有改动, 再关闭原后端</br>
+     * 不会迁移已有数据, 迁移见 {@link #migrateStorage}
+     */
+    public void setStorage(IPlayerDataStorage storage) {
+        saveAll();
+        if (!flush()) {
+            LOGGER.warn("PlayerDataManager[{}] pending writes did not finish before switching storage", suffix);
+        }
+        swapStorage(storage);
+    }
+
+    private void swapStorage(IPlayerDataStorage storage) {
+        IPlayerDataStorage previous = this.storage;
+        this.storage = storage;
+        try {
+            previous.close();
+        } catch (IOException e) {
+            LOGGER.error("PlayerDataManager[{}] failed to close storage: {}", suffix, e.getMessage());
+        }
+    }
+
+    /**
+     * 将当前后端中的所有玩家数据复制到新后端并切换过去, 原后端的数据保留不删除</br>
+     * 复制期间的保存仍写入原后端, 应在没有玩家数据写入时执行, 例如服务器启动时;
+     * 无法读取的玩家记录日志后跳过, 写入新后端失败时中止且不切换
+     *
+     * @return 迁移的玩家数
+     */
+    public int migrateStorage(IPlayerDataStorage target) throws IOException {
+        saveAll();
+        if (!flush()) {
+            throw new IOException("Pending writes did not finish within " + DEFAULT_FLUSH_TIMEOUT_SECONDS + " seconds");
+        }
+        IPlayerDataStorage source = this.storage;
+        int migrated = 0;
+        int skipped = 0;
+        for (UUID uuid : source.list()) {
+            ReentrantLock lock = playerLock(uuid);
+            lock.lock();
+            try {
+                CompoundNBT root;
+                try {
+                    root = source.read(uuid);
+                } catch (IOException | RuntimeException e) {
+                    skipped++;
+                    LOGGER.error("PlayerDataManager[{}] skipped unreadable player data {} during migration, it is kept in {}: {}",
+                            suffix, uuid, source.getClass().getSimpleName(), e.getMessage());
+                    continue;
+                }
+                if (root == null) continue;
+                target.write(uuid, root);
+                migrated++;
+            } finally {
+                lock.unlock();
+            }
+        }
+        target.flush();
+        swapStorage(target);
+        if (skipped > 0) {
+            LOGGER.warn("PlayerDataManager[{}] migrated {} players to {}, {} unreadable players skipped", suffix, migrated, target.getClass().getSimpleName(), skipped);
+        } else {
+            LOGGER.info("PlayerDataManager[{}] migrated {} players to {}", suffix, migrated, target.getClass().getSimpleName());
+        }
+        return migrated;
+    }
+
+    /**
+     * 切换到区域文件存储, 尚未完成过迁移而目录中有逐玩家文件时先迁移</br>
+     * 迁移完成后在存储目录写入标记文件, 中途失败时下次调用会重新迁移;
+     * 需在存储目录可用后调用, 且每次启动服务器时都应调用, 单人游戏中不同存档的迁移状态各自判断
+     *
+     * @return 迁移的玩家数
+     */
+    public int useRegionStorage() throws IOException {
+        Path marker = getStorageDirectory().resolve(REGION_MIGRATED_MARKER);
+        if (storage instanceof RegionPlayerDataStorage) {
+            if (Files.exists(marker)) return 0;
+            // 当前存档尚未迁移, 以逐玩家文件为迁移来源
+            setStorage(new FilePlayerDataStorage(this::getStorageDirectory));
+        }
+        RegionPlayerDataStorage region = new RegionPlayerDataStorage(this::getStorageDirectory);
+        int migrated = 0;
+        try {
+            if (storage instanceof FilePlayerDataStorage && !Files.exists(marker) && !storage.list().isEmpty()) {
+                migrated = migrateStorage(region);
+            } else {
+                setStorage(region);
+            }
+        } catch (IOException | RuntimeException e) {
+            try {
+                region.close();
+            } catch (IOException ce) {
+                e.addSuppressed(ce);
+            }
+            throw e;
+        }
+        if (!Files.exists(marker)) {
+            Files.createDirectories(marker.getParent());
+            Files.createFile(marker);
+        }
+        return migrated;
+    }
+
+    /**
+     * 设置是否启用后台写入</br>
+     * 启用后保存时只在调用线程复制 dirty 数据, 压缩与写入交由后台线程完成, 同一玩家尚未写出的保存会被合并
+     */
+    public void setWriteBehind(boolean writeBehind) {
+        this.writeBehind = writeBehind;
+    }
+
+    public boolean isWriteBehind() {
+        return writeBehind;
+    }
+
+    /**
+     * 等待此前提交的后台写入全部完成
+     *
+     * @return 是否在超时前全部完成
+     */
+    public boolean flush() {
+        return flush(DEFAULT_FLUSH_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 等待此前提交的后台写入全部完成, 并将存储后端落盘
+     *
+     * @return 是否在超时前全部完成
+     */
+    public boolean flush(long timeout, TimeUnit unit) {
+        boolean done = IO_EXECUTOR.awaitQuiescence(timeout, unit) && pendingWrites.isEmpty();
+        try {
+            storage.flush();
+        } catch (IOException e) {
+            LOGGER.error("PlayerDataManager[{}] failed to flush storage: {}", suffix, e.getMessage());
+            return false;
+        }
+        return done;
+    }
+
+    /**
+     * 写出所有改动并等待完成, 再关闭存储后端释放打开的文件</br>
+     * 存档关闭时调用, 之后的读写会按当时的存储目录重新打开, 不会沿用上一个存档的文件
+     *
+     * @return 是否在超时前全部写出
+     */
+    public boolean close() {
+        saveAll();
+        boolean done = flush();
+        try {
+            storage.close();
+        } catch (IOException e) {
+            LOGGER.error("PlayerDataManager[{}] failed to close storage: {}", suffix, e.getMessage());
+            return false;
+        }
+        return done;
+    }
+
+    /**
+     * 等待后台写入的玩家数
+     */
+    public int pendingWriteCount() {
+        return pendingWrites.size();
+    }
+
+    /**
+     * 设置缓存的玩家数上限, 超出时按最近最少使用淘汰未固定的玩家, 不大于 0 时不限制</br>
+     * 被淘汰玩家的节点引用随之失效, 开启前应通过 {@link #pin} 固定在线玩家
+     */
+    public void setMaxCachedPlayers(int maxCachedPlayers) {
+        this.maxCachedPlayers = maxCachedPlayers;
+        evictIfNeeded();
+    }
+
+    public int getMaxCachedPlayers() {
+        return maxCachedPlayers;
+    }
+
+    /**
+     * 固定玩家的缓存, 固定期间不会被淘汰
+     */
+    public void pin(UUID playerUuid) {
+        pinned.add(playerUuid);
+    }
+
+    /**
+     * 取消固定, 之后可按最近最少使用被淘汰
+     */
+    public void unpin(UUID playerUuid) {
+        pinned.remove(playerUuid);
+    }
+
+    public int cacheSize() {
+        return playerCache.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public void resetStatistics() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
     /**
      * 清空此实例的内存缓存
      */
     public void clearCache() {
+        for (CachedPlayerData cached : playerCache.values()) {
+            cached.evicted = true;
+        }
         playerCache.clear();
         LOGGER.info("PlayerDataManager[{}] cache cleared.", suffix);
     }
@@ -93,7 +414,7 @@ public final class PlayerDataManager {
     /**
      * 获取或创建当前 mod 的节点
      *
-     * @return 缓存中节点的引用
+     * @return 缓存中节点的引用, 玩家未固定时可能因缓存上限被淘汰而失效, 不宜长期持有
      */
     public CompoundNBT getOrCreate(UUID playerUuid) {
         return getOrCreate(playerUuid, this.modId);
@@ -102,14 +423,21 @@ public final class PlayerDataManager {
     /**
      * 获取或创建某个 mod 的节点
      *
-     * @return 缓存中节点的引用
+     * @return 缓存中节点的引用, 玩家未固定时可能因缓存上限被淘汰而失效, 不宜长期持有
      */
     public CompoundNBT getOrCreate(UUID playerUuid, String modId) {
         CachedPlayerData cached = loadRootIfAbsent(playerUuid);
         synchronized (cached) {
-            CompoundNBT node = cached.root.contains(modId, 10) ? cached.root.getCompound(modId) : new CompoundNBT();
-            cached.root.put(modId, node);
-            cached.dirty = true;
+            if (cached.evicted) return getOrCreate(playerUuid, modId);
+            CompoundNBT node;
+            if (cached.root.contains(modId, 10)) {
+                node = cached.root.getCompound(modId);
+            } else {
+                node = new CompoundNBT();
+                cached.root.put(modId, node);
+                cached.dirty = true;
+            }
+            track(cached, modId, node);
             return node;
         }
     }
@@ -129,7 +457,12 @@ public final class PlayerDataManager {
     public void put(UUID playerUuid, String modId, CompoundNBT tag) {
         CachedPlayerData cached = loadRootIfAbsent(playerUuid);
         synchronized (cached) {
+            if (cached.evicted) {
+                put(playerUuid, modId, tag);
+                return;
+            }
             if (tag == null) {
+                cached.nodeHashes.remove(modId);
                 if (cached.root.contains(modId, 10)) {
                     cached.root.remove(modId);
                     cached.dirty = true;
@@ -137,6 +470,8 @@ public final class PlayerDataManager {
             } else {
                 cached.root.put(modId, tag);
                 cached.dirty = true;
+                // 调用方仍持有 tag 的引用, 之后的修改同样需要跟踪
+                cached.nodeHashes.put(modId, hash(tag));
             }
         }
     }
@@ -154,14 +489,16 @@ public final class PlayerDataManager {
     public CompoundNBT loadFromDisk(UUID playerUuid, String modId) {
         CachedPlayerData cached = loadRootFromDisk(playerUuid);
         synchronized (cached) {
+            CompoundNBT node;
             if (cached.root.contains(modId, 10)) {
-                return cached.root.getCompound(modId);
+                node = cached.root.getCompound(modId);
             } else {
-                CompoundNBT node = new CompoundNBT();
+                node = new CompoundNBT();
                 cached.root.put(modId, node);
                 cached.dirty = true;
-                return node;
             }
+            track(cached, modId, node);
+            return node;
         }
     }
 
@@ -179,6 +516,11 @@ public final class PlayerDataManager {
         CachedPlayerData cached = playerCache.get(playerUuid);
         if (cached == null) return;
         synchronized (cached) {
+            if (cached.evicted) {
+                remove(playerUuid, modId);
+                return;
+            }
+            cached.nodeHashes.remove(modId);
             if (cached.root.contains(modId, 10)) {
                 cached.root.remove(modId);
                 cached.dirty = true;
@@ -187,24 +529,216 @@ public final class PlayerDataManager {
     }
 
     /**
-     * 尝试保指定玩家的 dirty 缓存项
+     * 并行扫描所有已存储及已缓存的玩家数据, 不写入缓存</br>
+     * 须在服务端主线程调用: 已缓存玩家的节点由主线程直接修改, 其副本在调用线程中复制, 其余玩家在扫描线程中读取并解压;
+     * 过滤与投影在扫描线程中执行, 传入的 root 为独立副本, 结果依次交给 sink, sink 的调用互斥
+     *
+     * @param filter     过滤条件
+     * @param projection 投影
+     * @param sink       接收投影结果
+     * @return 扫描结束时完成, 值为匹配的玩家数; 单个玩家读取或处理失败时记录日志并跳过,
+     * 列出玩家失败或扫描线程意外终止时以异常完成; 取消后扫描线程不再读取新的玩家
+     */
+    public <R> CompletableFuture<Integer> scanAll(BiPredicate<UUID, CompoundNBT> filter
+            , BiFunction<UUID, CompoundNBT, R> projection
+            , BiConsumer<UUID, R> sink) {
+        CompletableFuture<Integer> result = new CompletableFuture<>();
+        Map<UUID, CompoundNBT> cachedRoots = new HashMap<>(playerCache.size());
+        try {
+            for (Map.Entry<UUID, CachedPlayerData> entry : playerCache.entrySet()) {
+                CachedPlayerData cached = entry.getValue();
+                synchronized (cached) {
+                    if (!cached.evicted) cachedRoots.put(entry.getKey(), cached.root.copy());
+                }
+            }
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+            return result;
+        }
+        // 列出存储中的玩家可能需要打开并校验所有区域文件, 不在调用线程中执行
+        SCAN_EXECUTOR.execute(() -> {
+            try {
+                Set<UUID> all = new LinkedHashSet<>(cachedRoots.keySet());
+                all.addAll(pendingWrites.keySet());
+                all.addAll(storage.list());
+                scan(new ArrayList<>(all), cachedRoots, filter, projection, sink, result);
+            } catch (Throwable t) {
+                result.completeExceptionally(t);
+            }
+        });
+        return result;
+    }
+
+    private <R> void scan(List<UUID> players
+            , Map<UUID, CompoundNBT> cachedRoots
+            , BiPredicate<UUID, CompoundNBT> filter
+            , BiFunction<UUID, CompoundNBT, R> projection
+            , BiConsumer<UUID, R> sink
+            , CompletableFuture<Integer> result) {
+        int workers = Math.min(SCAN_PARALLELISM, players.size());
+        if (workers == 0) {
+            result.complete(0);
+            return;
+        }
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger matched = new AtomicInteger();
+        AtomicInteger running = new AtomicInteger(workers);
+        Runnable worker = () -> {
+            try {
+                int i;
+                while (!result.isDone() && (i = next.getAndIncrement()) < players.size()) {
+                    UUID uuid = players.get(i);
+                    try {
+                        CompoundNBT root = cachedRoots.containsKey(uuid) ? cachedRoots.get(uuid) : snapshot(uuid);
+                        if (root == null || !filter.test(uuid, root)) continue;
+                        R value = projection.apply(uuid, root);
+                        synchronized (sink) {
+                            sink.accept(uuid, value);
+                        }
+                        matched.incrementAndGet();
+                    } catch (Exception e) {
+                        LOGGER.warn("PlayerDataManager[{}] scan failed for {}", suffix, uuid, e);
+                    }
+                }
+            } catch (Throwable t) {
+                // 扫描线程意外终止时不能以部分结果正常完成
+                result.completeExceptionally(t);
+            } finally {
+                if (running.decrementAndGet() == 0) {
+                    result.complete(matched.get());
+                }
+            }
+        };
+        for (int i = 0; i < workers; i++) {
+            SCAN_EXECUTOR.execute(worker);
+        }
+    }
+
+    /**
+     * 并行扫描所有玩家数据并收集投影结果, 见 {@link #scanAll(BiPredicate, BiFunction, BiConsumer)}
+     *
+     * @return 扫描结束时完成, 值为玩家到投影结果的映射
+     */
+    public <R> CompletableFuture<Map<UUID, R>> scanAll(BiPredicate<UUID, CompoundNBT> filter
+            , BiFunction<UUID, CompoundNBT, R> projection) {
+        Map<UUID, R> results = new HashMap<>();
+        return scanAll(filter, projection, results::put).thenApply(matched -> results);
+    }
+
+    /**
+     * 读取未缓存玩家的数据副本, 优先使用等待写入的快照, 不写入缓存
+     *
+     * @return 玩家数据不存在或读取失败时返回 null
+     */
+    @Nullable
+    private CompoundNBT snapshot(UUID playerUuid) {
+        ReentrantLock lock = playerLock(playerUuid);
+        lock.lock();
+        try {
+            CompoundNBT pending = pendingWrites.get(playerUuid);
+            if (pending != null) return pending.copy();
+            return storage.read(playerUuid);
+        } catch (Exception e) {
+            LOGGER.warn("PlayerDataManager[{}] failed to read {} while scanning. Error: {}", suffix, playerUuid, e.getMessage());
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 记录交出引用的节点的当前内容哈希, 已在跟踪的节点保持原有基准
+     */
+    private static void track(CachedPlayerData cached, String modId, CompoundNBT node) {
+        if (!cached.nodeHashes.containsKey(modId)) {
+            cached.nodeHashes.put(modId, hash(node));
+        }
+    }
+
+    /**
+     * 判断缓存项自上次保存以来是否有改动, 需持有缓存项的锁</br>
+     * 除显式标记的改动外, 逐个比对已交出引用的节点的内容哈希, 并将基准更新为当前值;
+     * 有改动时将缓存项标记为 dirty
+     */
+    private static boolean collectChanges(CachedPlayerData cached) {
+        boolean changed = cached.dirty;
+        for (Map.Entry<String, Long> entry : cached.nodeHashes.entrySet()) {
+            long hash = hash(cached.root.getCompound(entry.getKey()));
+            if (hash != entry.getValue()) {
+                entry.setValue(hash);
+                changed = true;
+            }
+        }
+        cached.dirty = changed;
+        return changed;
+    }
+
+    /**
+     * 节点序列化字节的 FNV-1a 64 位哈希, 不分配序列化缓冲区
+     */
+    private static long hash(CompoundNBT node) {
+        NodeHasher hasher = new NodeHasher();
+        try {
+            node.write(new DataOutputStream(hasher));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return hasher.hash;
+    }
+
+    private static final class NodeHasher extends OutputStream {
+        long hash = 0xcbf29ce484222325L;
+
+        @Override
+        public void write(int b) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+    }
+
+    /**
+     * 尝试保存指定玩家有改动的缓存项
      */
     public void saveToDisk(UUID playerUuid) {
         CachedPlayerData cached = playerCache.get(playerUuid);
         if (cached == null) {
             return;
         }
+        if (writeBehind) {
+            enqueueWrite(playerUuid, cached);
+            return;
+        }
+        writeNow(playerUuid, cached);
+    }
+
+    /**
+     * 尝试保存所有有改动的缓存项, 未改动的玩家不会重新压缩写入
+     */
+    public void saveAll() {
+        for (Map.Entry<UUID, CachedPlayerData> e : playerCache.entrySet()) {
+            UUID uuid = e.getKey();
+            CachedPlayerData cached = e.getValue();
+            if (writeBehind) {
+                enqueueWrite(uuid, cached);
+                continue;
+            }
+            writeNow(uuid, cached);
+        }
+    }
+
+    /**
+     * 在调用线程写入有改动的缓存项
+     */
+    private void writeNow(UUID playerUuid, CachedPlayerData cached) {
         synchronized (cached) {
-            if (!cached.dirty) return;
-            File file = getPlayerDataFile(playerUuid);
-            Path filePath = file.toPath();
-            ReentrantLock lock = fileLocks.computeIfAbsent(filePath, p -> new ReentrantLock());
+            if (!collectChanges(cached)) return;
+            ReentrantLock lock = playerLock(playerUuid);
             lock.lock();
             try {
-                atomicWrite(cached.root, file);
+                storage.write(playerUuid, cached.root);
                 cached.dirty = false;
             } catch (IOException e) {
-                LOGGER.error("PlayerDataManager[{}] failed to write {} : {}", suffix, file.getAbsolutePath(), e.getMessage());
+                LOGGER.error("PlayerDataManager[{}] failed to write {} : {}", suffix, playerUuid, e.getMessage());
             } finally {
                 lock.unlock();
             }
@@ -212,144 +746,151 @@ public final class PlayerDataManager {
     }
 
     /**
-     * 尝试保存所有 dirty 缓存项
+     * 复制有改动的数据并提交后台写入, 已有等待中的写入时只替换其快照
      */
-    public void saveAll() {
-        for (Map.Entry<UUID, CachedPlayerData> e : playerCache.entrySet()) {
-            UUID uuid = e.getKey();
-            CachedPlayerData cached = e.getValue();
-            synchronized (cached) {
-                if (!cached.dirty) continue;
-                File file = getPlayerDataFile(uuid);
-                Path filePath = file.toPath();
-                ReentrantLock lock = fileLocks.computeIfAbsent(filePath, p -> new ReentrantLock());
-                lock.lock();
-                try {
-                    atomicWrite(cached.root, file);
-                    cached.dirty = false;
-                } catch (IOException ex) {
-                    LOGGER.error("PlayerDataManager[{}] saveAll failed for {}: {}", suffix, uuid, ex.getMessage());
-                } finally {
-                    lock.unlock();
-                }
-            }
+    private void enqueueWrite(UUID playerUuid, CachedPlayerData cached) {
+        synchronized (cached) {
+            if (!collectChanges(cached)) return;
+            cached.dirty = false;
+            // 在条目锁内替换快照, 保证等待中的总是最新一份
+            if (pendingWrites.put(playerUuid, cached.root.copy()) != null) return;
+        }
+        IO_EXECUTOR.execute(playerUuid, () -> writePending(playerUuid));
+    }
+
+    private void writePending(UUID playerUuid) {
+        ReentrantLock lock = playerLock(playerUuid);
+        lock.lock();
+        try {
+            // 持有玩家锁后再取出快照, 读取方要么读到快照要么读到写完的数据
+            CompoundNBT pending = pendingWrites.remove(playerUuid);
+            if (pending == null) return;
+            storage.write(playerUuid, pending);
+        } catch (IOException e) {
+            LOGGER.error("PlayerDataManager[{}] failed to write {} : {}", suffix, playerUuid, e.getMessage());
+            // 重新标记, 等待下次保存重试
+            CachedPlayerData cached = playerCache.get(playerUuid);
+            if (cached != null) cached.dirty = true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 从存储后端读取 root, 有等待后台写入的快照时以快照为准
+     */
+    private CompoundNBT readRoot(UUID playerUuid) {
+        CompoundNBT pending = pendingWrites.get(playerUuid);
+        if (pending != null) {
+            return pending.copy();
+        }
+        try {
+            CompoundNBT root = storage.read(playerUuid);
+            if (root != null) return root;
+        } catch (Exception e) {
+            LOGGER.warn("PlayerDataManager[{}] failed to read {}, using empty root. Error: {}",
+                    suffix, playerUuid, e.getMessage());
         }
+        return new CompoundNBT();
     }
 
     private CachedPlayerData loadRootIfAbsent(UUID playerUuid) {
         CachedPlayerData existing = playerCache.get(playerUuid);
-        if (existing != null) return existing;
+        if (existing != null) {
+            hits.increment();
+            existing.lastAccess = System.nanoTime();
+            return existing;
+        }
 
-        File file = getPlayerDataFile(playerUuid);
-        Path filePath = file.toPath();
-        ReentrantLock lock = fileLocks.computeIfAbsent(filePath, p -> new ReentrantLock());
+        CachedPlayerData cached;
+        ReentrantLock lock = playerLock(playerUuid);
         lock.lock();
         try {
             // double-check
             existing = playerCache.get(playerUuid);
-            if (existing != null) return existing;
-
-            CompoundNBT root;
-            if (file.exists()) {
-                try {
-                    root = NBTUtils.readCompressed(file);
-                } catch (Exception e) {
-                    LOGGER.warn("PlayerDataManager[{}] failed to read {}, using empty root. Error: {}",
-                            suffix, file.getAbsolutePath(), e.getMessage());
-                    root = new CompoundNBT();
-                }
-            } else {
-                root = new CompoundNBT();
+            if (existing != null) {
+                hits.increment();
+                return existing;
             }
-            CachedPlayerData cached = new CachedPlayerData(root);
+            misses.increment();
+            cached = new CachedPlayerData(readRoot(playerUuid));
             playerCache.put(playerUuid, cached);
-            return cached;
         } finally {
             lock.unlock();
         }
+        evictIfNeeded();
+        return cached;
     }
 
     /**
      * 强制从磁盘读取玩家数据
      */
     private CachedPlayerData loadRootFromDisk(UUID playerUuid) {
-        File file = getPlayerDataFile(playerUuid);
-        Path filePath = file.toPath();
-        ReentrantLock lock = fileLocks.computeIfAbsent(filePath, p -> new ReentrantLock());
+        CachedPlayerData cached;
+        ReentrantLock lock = playerLock(playerUuid);
         lock.lock();
         try {
-            CompoundNBT root;
-            if (file.exists()) {
-                try {
-                    root = NBTUtils.readCompressed(file);
-                } catch (Exception e) {
-                    LOGGER.warn("PlayerDataManager[{}] failed to read {}, using empty root. Error: {}",
-                            suffix, file.getAbsolutePath(), e.getMessage());
-                    root = new CompoundNBT();
-                }
-            } else {
-                root = new CompoundNBT();
-            }
-            CachedPlayerData cached = new CachedPlayerData(root);
-            playerCache.put(playerUuid, cached);
-            return cached;
+            misses.increment();
+            cached = new CachedPlayerData(readRoot(playerUuid));
+            CachedPlayerData replaced = playerCache.put(playerUuid, cached);
+            if (replaced != null) replaced.evicted = true;
         } finally {
             lock.unlock();
         }
+        evictIfNeeded();
+        return cached;
     }
 
-    private File getPlayerDataFile(UUID uuid) {
-        Path base = playerDataDirSupplier.get();
-        File dir = base.resolve(suffix).toFile();
-        if (!dir.exists()) {
-            if (!dir.mkdirs()) {
-                LOGGER.debug("PlayerDataManager[{}] could not create dir: {}", suffix, dir.getAbsolutePath());
-            }
-        }
-        return new File(dir, uuid + ".nbt");
-    }
-
-    private void atomicWrite(CompoundNBT root, File target) throws IOException {
-        File dir = target.getParentFile();
-        File tmpFile = new File(dir, target.getName() + ".tmp");
-        File bakFile = new File(dir, target.getName() + ".bak");
-
-        boolean written = NBTUtils.writeCompressed(root, tmpFile);
-        if (!written) throw new IOException("Failed to write temp file: " + tmpFile.getAbsolutePath());
-
+    /**
+     * 缓存超出上限时, 按最近最少使用淘汰未固定的玩家, 一次淘汰至上限的九成以摊薄扫描开销</br>
+     * dirty 的玩家先写出: 后台写入模式下提交写入后跳过, 待写入完成后的下次淘汰再移除
+     */
+    private void evictIfNeeded() {
+        int max = maxCachedPlayers;
+        if (max <= 0 || playerCache.size() <= max) return;
+        if (!evictionLock.tryLock()) return;
         try {
-            if (target.exists()) {
-                try {
-                    Files.move(target.toPath(), bakFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
-                } catch (IOException ex) {
-                    Files.move(target.toPath(), bakFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            int excess = playerCache.size() - Math.max(1, max - max / 10);
+            if (excess <= 0) return;
+            List<Map.Entry<UUID, CachedPlayerData>> candidates = new ArrayList<>(playerCache.size());
+            for (Map.Entry<UUID, CachedPlayerData> entry : playerCache.entrySet()) {
+                if (!pinned.contains(entry.getKey())) {
+                    candidates.add(entry);
                 }
             }
-        } catch (Exception e) {
-            LOGGER.warn("PlayerDataManager[{}] failed to move original to bak: {} -> {}. Error: {}",
-                    suffix, target.getAbsolutePath(), bakFile.getAbsolutePath(), e.getMessage());
+            candidates.sort(Comparator.comparingLong(entry -> entry.getValue().lastAccess));
+            for (int i = 0; i < candidates.size() && excess > 0; i++) {
+                if (evict(candidates.get(i).getKey(), candidates.get(i).getValue())) {
+                    excess--;
+                }
+            }
+        } finally {
+            evictionLock.unlock();
         }
+    }
 
-        try {
-            try {
-                Files.move(tmpFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
-            } catch (IOException ex) {
-                Files.move(tmpFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
-            }
-        } catch (Exception e) {
-            LOGGER.error("PlayerDataManager[{}] failed to move tmp to target: {} -> {}. Error: {}",
-                    suffix, tmpFile.getAbsolutePath(), target.getAbsolutePath(), e.getMessage());
-            if (bakFile.exists()) {
-                try {
-                    Files.move(bakFile.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
-                    LOGGER.warn("PlayerDataManager[{}] rollback: restored bak to target {}", suffix, target.getAbsolutePath());
-                } catch (Exception rex) {
-                    LOGGER.error("PlayerDataManager[{}] rollback failed for target: {} (bak: {})", suffix, target.getAbsolutePath(), bakFile.getAbsolutePath());
+    private boolean evict(UUID playerUuid, CachedPlayerData cached) {
+        synchronized (cached) {
+            if (cached.evicted || pinned.contains(playerUuid)) return false;
+            if (collectChanges(cached)) {
+                if (writeBehind) {
+                    enqueueWrite(playerUuid, cached);
+                    return false;
                 }
+                writeNow(playerUuid, cached);
+                if (cached.dirty) return false;
             }
-            if (tmpFile.exists()) tmpFile.delete();
-            throw e;
+            if (pendingWrites.containsKey(playerUuid)) return false;
+            cached.evicted = true;
+            playerCache.remove(playerUuid, cached);
         }
+        evictions.increment();
+        return true;
+    }
+
+    private ReentrantLock playerLock(UUID playerUuid) {
+        int hash = playerUuid.hashCode();
+        return playerLocks[(hash ^ (hash >>> 16)) & (PLAYER_LOCK_STRIPES - 1)];
     }
 
     private static String sanitizeSuffixStatic(String s) {
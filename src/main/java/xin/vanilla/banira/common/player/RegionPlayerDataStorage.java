@@ -0,0 +1,485 @@
+package xin.vanilla.banira.common.player;
+
+import it.unimi.dsi.fastutil.objects.Object2LongMap;
+import it.unimi.dsi.fastutil.objects.Object2LongOpenHashMap;
+import net.minecraft.nbt.CompoundNBT;
+import net.minecraft.nbt.CompressedStreamTools;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import xin.vanilla.banira.common.api.IPlayerDataStorage;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * 将多个玩家打包存放于区域文件的存储后端</br>
+ * 玩家按 UUID 散列到固定数量的区域文件 {@code r.<n>.dat}, 每条记录带校验并按扇区对齐, 更新时只追加新记录;
+ * 每个区域的偏移索引保存在 {@code r.<n>.idx}, 打开时先载入索引, 再校验索引之后追加的记录, 跳过损坏的记录并截断崩溃留下的残缺尾部;
+ * 失效扇区过半时将存活记录重写到新文件以回收空间</br>
+ * 区域数一经使用不可更改
+ */
+public final class RegionPlayerDataStorage implements IPlayerDataStorage {
+    private static final Logger LOGGER = LogManager.getLogger();
+
+    public static final int SECTOR_SIZE = 512;
+    public static final int DEFAULT_REGIONS = 32;
+    /**
+     * 区域文件达到该扇区数后才考虑压缩
+     */
+    public static final int COMPACT_MIN_SECTORS = 2048;
+    /**
+     * 单条记录负载的最大字节数
+     */
+    private static final int MAX_RECORD_LENGTH = 16 * 1024 * 1024;
+    private static final int RECORD_MAGIC = 0x42445231;
+    private static final int INDEX_MAGIC = 0x42444931;
+    /**
+     * magic, uuid, 负载长度, 负载校验
+     */
+    private static final int HEADER_SIZE = 4 + 8 + 8 + 4 + 4;
+
+    private final Supplier<Path> directory;
+    private final Region[] regions;
+
+    /**
+     * @param directory 延迟提供存储目录
+     */
+    public RegionPlayerDataStorage(Supplier<Path> directory) {
+        this(directory, DEFAULT_REGIONS);
+    }
+
+    /**
+     * @param directory 延迟提供存储目录
+     * @param regions   区域文件数
+     */
+    public RegionPlayerDataStorage(Supplier<Path> directory, int regions) {
+        if (regions <= 0) {
+            throw new IllegalArgumentException("Region count must be positive: " + regions);
+        }
+        this.directory = directory;
+        this.regions = new Region[regions];
+        for (int i = 0; i < regions; i++) {
+            this.regions[i] = new Region(i);
+        }
+    }
+
+    @Nullable
+    @Override
+    public CompoundNBT read(UUID playerUuid) throws IOException {
+        byte[] payload = region(playerUuid).read(playerUuid);
+        if (payload == null) return null;
+        return CompressedStreamTools.readCompressed(new ByteArrayInputStream(payload));
+    }
+
+    @Override
+    public void write(UUID playerUuid, CompoundNBT root) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CompressedStreamTools.writeCompressed(root, out);
+        byte[] payload = out.toByteArray();
+        if (payload.length > MAX_RECORD_LENGTH) {
+            throw new IOException("Player data too large: " + playerUuid + " (" + payload.length + " bytes)");
+        }
+        int sectors = sectorsFor(payload.length);
+        ByteBuffer record = ByteBuffer.allocate(sectors * SECTOR_SIZE);
+        record.putInt(RECORD_MAGIC)
+                .putLong(playerUuid.getMostSignificantBits())
+                .putLong(playerUuid.getLeastSignificantBits())
+                .putInt(payload.length)
+                .putInt(crc(payload, payload.length))
+                .put(payload);
+        // 补齐扇区的填充字节一并写出
+        record.clear();
+        region(playerUuid).append(playerUuid, record, sectors);
+    }
+
+    @Override
+    public Collection<UUID> list() throws IOException {
+        List<UUID> result = new ArrayList<>();
+        for (Region region : regions) {
+            region.collect(result);
+        }
+        return result;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        IOException error = null;
+        for (Region region : regions) {
+            try {
+                region.flush();
+            } catch (IOException e) {
+                if (error == null) error = e;
+                else error.addSuppressed(e);
+            }
+        }
+        if (error != null) throw error;
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException error = null;
+        for (Region region : regions) {
+            try {
+                region.close();
+            } catch (IOException e) {
+                if (error == null) error = e;
+                else error.addSuppressed(e);
+            }
+        }
+        if (error != null) throw error;
+    }
+
+    /**
+     * 压缩所有区域中失效扇区占比过半的文件
+     *
+     * @return 回收的扇区数
+     */
+    public long compact() throws IOException {
+        long reclaimed = 0;
+        for (Region region : regions) {
+            reclaimed += region.compact(false);
+        }
+        return reclaimed;
+    }
+
+    private Region region(UUID playerUuid) {
+        return regions[Math.floorMod(playerUuid.hashCode(), regions.length)];
+    }
+
+    private static int sectorsFor(int length) {
+        return (HEADER_SIZE + length + SECTOR_SIZE - 1) / SECTOR_SIZE;
+    }
+
+    private static long pack(int sector, int sectors) {
+        return ((long) sector << 32) | (sectors & 0xFFFFFFFFL);
+    }
+
+    private static int sectorOf(long entry) {
+        return (int) (entry >>> 32);
+    }
+
+    private static int sectorsOf(long entry) {
+        return (int) entry;
+    }
+
+    private static int crc(byte[] data, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, length);
+        return (int) crc.getValue();
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException();
+            }
+        }
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, position + buffer.position());
+        }
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * 单个区域文件, 所有操作互斥
+     */
+    private final class Region {
+        private final int index;
+        private final Object2LongMap<UUID> entries = new Object2LongOpenHashMap<>();
+        private FileChannel channel;
+        /**
+         * 当前打开的文件所在目录, 存储目录变化时重新打开
+         */
+        private Path openedDirectory;
+        /**
+         * 下一条记录的起始扇区
+         */
+        private int endSector;
+        private long liveSectors;
+        private boolean indexDirty;
+
+        Region(int index) {
+            this.index = index;
+            this.entries.defaultReturnValue(-1);
+        }
+
+        private Path directory() {
+            return openedDirectory != null ? openedDirectory : directory.get();
+        }
+
+        private Path dataPath() {
+            return directory().resolve("r." + index + ".dat");
+        }
+
+        private Path indexPath() {
+            return directory().resolve("r." + index + ".idx");
+        }
+
+        synchronized byte[] read(UUID playerUuid) throws IOException {
+            if (!open(false)) return null;
+            long entry = entries.getLong(playerUuid);
+            if (entry == -1) return null;
+            ByteBuffer buffer = ByteBuffer.allocate(sectorsOf(entry) * SECTOR_SIZE);
+            readFully(channel, buffer, (long) sectorOf(entry) * SECTOR_SIZE);
+            buffer.flip();
+            int magic = buffer.getInt();
+            long most = buffer.getLong();
+            long least = buffer.getLong();
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (magic != RECORD_MAGIC || most != playerUuid.getMostSignificantBits() || least != playerUuid.getLeastSignificantBits()
+                    || length < 0 || length > buffer.remaining()) {
+                throw new IOException("Corrupted record of " + playerUuid + " in " + dataPath());
+            }
+            byte[] payload = new byte[length];
+            buffer.get(payload);
+            if (crc(payload, length) != checksum) {
+                throw new IOException("Checksum mismatch of " + playerUuid + " in " + dataPath());
+            }
+            return payload;
+        }
+
+        synchronized void append(UUID playerUuid, ByteBuffer record, int sectors) throws IOException {
+            open(true);
+            writeFully(channel, record, (long) endSector * SECTOR_SIZE);
+            put(playerUuid, pack(endSector, sectors));
+            endSector += sectors;
+            compact(true);
+        }
+
+        synchronized void collect(List<UUID> result) throws IOException {
+            if (open(false)) {
+                result.addAll(entries.keySet());
+            }
+        }
+
+        synchronized void flush() throws IOException {
+            if (channel == null) return;
+            channel.force(false);
+            if (indexDirty) {
+                saveIndex();
+            }
+        }
+
+        synchronized void close() throws IOException {
+            if (channel == null) return;
+            try {
+                flush();
+            } finally {
+                channel.close();
+                channel = null;
+                openedDirectory = null;
+                entries.clear();
+            }
+        }
+
+        /**
+         * 将存活记录按顺序重写到新文件
+         *
+         * @param automatic 为 true 时仅在文件足够大且失效扇区过半时压缩
+         * @return 回收的扇区数
+         */
+        synchronized long compact(boolean automatic) throws IOException {
+            if (!open(false)) return 0;
+            long stale = endSector - liveSectors;
+            if (stale <= 0 || (automatic && (endSector < COMPACT_MIN_SECTORS || stale * 2 < endSector))) {
+                return 0;
+            }
+            Path data = dataPath();
+            Path temp = data.resolveSibling(data.getFileName() + ".tmp");
+            Object2LongMap<UUID> moved = new Object2LongOpenHashMap<>(entries.size());
+            moved.defaultReturnValue(-1);
+            int sector = 0;
+            try (FileChannel out = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                for (Object2LongMap.Entry<UUID> entry : entries.object2LongEntrySet()) {
+                    int sectors = sectorsOf(entry.getLongValue());
+                    ByteBuffer buffer = ByteBuffer.allocate(sectors * SECTOR_SIZE);
+                    readFully(channel, buffer, (long) sectorOf(entry.getLongValue()) * SECTOR_SIZE);
+                    buffer.flip();
+                    writeFully(out, buffer, (long) sector * SECTOR_SIZE);
+                    moved.put(entry.getKey(), pack(sector, sectors));
+                    sector += sectors;
+                }
+                out.force(true);
+            }
+            // 先删除旧索引, 避免替换数据文件后崩溃时旧索引指向新文件
+            Files.deleteIfExists(indexPath());
+            channel.close();
+            channel = null;
+            move(temp, data);
+            channel = FileChannel.open(data, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            long reclaimed = endSector - sector;
+            entries.clear();
+            entries.putAll(moved);
+            endSector = sector;
+            liveSectors = sector;
+            saveIndex();
+            LOGGER.debug("Compacted player data region {}: reclaimed {} sectors", data, reclaimed);
+            return reclaimed;
+        }
+
+        private void put(UUID playerUuid, long entry) {
+            long previous = entries.put(playerUuid, entry);
+            if (previous != -1) {
+                liveSectors -= sectorsOf(previous);
+            }
+            liveSectors += sectorsOf(entry);
+            indexDirty = true;
+        }
+
+        /**
+         * 打开区域文件并重建索引, 存储目录与已打开文件所在目录不同时先关闭原文件
+         *
+         * @param create 文件不存在时是否创建
+         * @return 文件是否已打开
+         */
+        private boolean open(boolean create) throws IOException {
+            Path dir = directory.get();
+            if (channel != null) {
+                if (dir.equals(openedDirectory)) return true;
+                close();
+            }
+            Path data = dir.resolve("r." + index + ".dat");
+            if (!create && !Files.exists(data)) return false;
+            Files.createDirectories(data.getParent());
+            channel = FileChannel.open(data, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            openedDirectory = dir;
+            entries.clear();
+            liveSectors = 0;
+            long size = channel.size();
+            int indexed = loadIndex(size);
+            recover(indexed, size);
+            indexDirty = endSector != indexed;
+            return true;
+        }
+
+        /**
+         * @return 索引覆盖的扇区数, 索引缺失或无效时返回 0
+         */
+        private int loadIndex(long size) {
+            Path path = indexPath();
+            if (!Files.exists(path)) return 0;
+            CRC32 crc = new CRC32();
+            try (DataInputStream in = new DataInputStream(new CheckedInputStream(new BufferedInputStream(Files.newInputStream(path)), crc))) {
+                if (in.readInt() != INDEX_MAGIC) throw new IOException("Bad magic");
+                int covered = in.readInt();
+                int count = in.readInt();
+                if (covered < 0 || (long) covered * SECTOR_SIZE > size || count < 0) throw new IOException("Index out of range");
+                for (int i = 0; i < count; i++) {
+                    UUID uuid = new UUID(in.readLong(), in.readLong());
+                    int sector = in.readInt();
+                    int sectors = in.readInt();
+                    if (sector < 0 || sectors <= 0 || (long) sector + sectors > covered) throw new IOException("Entry out of range");
+                    put(uuid, pack(sector, sectors));
+                }
+                int expected = (int) crc.getValue();
+                if (in.readInt() != expected) throw new IOException("Checksum mismatch");
+                return covered;
+            } catch (IOException e) {
+                LOGGER.warn("Ignoring player data index {}: {}", path, e.getMessage());
+                entries.clear();
+                liveSectors = 0;
+                return 0;
+            }
+        }
+
+        /**
+         * 从指定扇区起逐条校验记录, 遇到损坏的记录时逐扇区向后查找下一条有效记录,
+         * 损坏的扇区视为失效扇区留待压缩回收, 只截断最后一条有效记录之后的残缺内容
+         */
+        private void recover(int fromSector, long size) throws IOException {
+            int sector = fromSector;
+            int end = fromSector;
+            int skipped = 0;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while ((long) sector * SECTOR_SIZE + HEADER_SIZE <= size) {
+                int sectors = readRecord(header, sector, size);
+                if (sectors > 0) {
+                    sector += sectors;
+                    end = sector;
+                } else {
+                    sector++;
+                    skipped++;
+                }
+            }
+            int lost = skipped - (sector - end);
+            if (lost > 0) {
+                LOGGER.warn("Skipped {} corrupted sectors of player data records in {}", lost, dataPath());
+            }
+            if ((long) end * SECTOR_SIZE < size) {
+                LOGGER.warn("Truncating {} bytes of incomplete player data records in {}", size - (long) end * SECTOR_SIZE, dataPath());
+                channel.truncate((long) end * SECTOR_SIZE);
+            }
+            endSector = end;
+        }
+
+        /**
+         * 校验指定扇区起的记录, 有效时加入索引
+         *
+         * @return 记录占用的扇区数, 不是有效记录时返回 0
+         */
+        private int readRecord(ByteBuffer header, int sector, long size) throws IOException {
+            header.clear();
+            readFully(channel, header, (long) sector * SECTOR_SIZE);
+            header.flip();
+            int magic = header.getInt();
+            long most = header.getLong();
+            long least = header.getLong();
+            int length = header.getInt();
+            int checksum = header.getInt();
+            if (magic != RECORD_MAGIC || length < 0 || length > MAX_RECORD_LENGTH) return 0;
+            int sectors = sectorsFor(length);
+            if ((long) (sector + sectors) * SECTOR_SIZE > size) return 0;
+            byte[] payload = new byte[length];
+            readFully(channel, ByteBuffer.wrap(payload), (long) sector * SECTOR_SIZE + HEADER_SIZE);
+            if (crc(payload, length) != checksum) return 0;
+            put(new UUID(most, least), pack(sector, sectors));
+            return sectors;
+        }
+
+        private void saveIndex() throws IOException {
+            Path path = indexPath();
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            CRC32 crc = new CRC32();
+            try (DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(Files.newOutputStream(temp)), crc))) {
+                out.writeInt(INDEX_MAGIC);
+                out.writeInt(endSector);
+                out.writeInt(entries.size());
+                for (Object2LongMap.Entry<UUID> entry : entries.object2LongEntrySet()) {
+                    out.writeLong(entry.getKey().getMostSignificantBits());
+                    out.writeLong(entry.getKey().getLeastSignificantBits());
+                    out.writeInt(sectorOf(entry.getLongValue()));
+                    out.writeInt(sectorsOf(entry.getLongValue()));
+                }
+                out.writeInt((int) crc.getValue());
+            }
+            move(temp, path);
+            indexDirty = false;
+        }
+    }
+
+}
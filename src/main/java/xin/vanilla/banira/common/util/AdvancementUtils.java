@@ -6,17 +6,22 @@ import lombok.experimental.Accessors;
 import net.minecraft.item.Items;
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.fml.DistExecutor;
 import net.minecraftforge.fml.loading.FMLEnvironment;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import xin.vanilla.banira.BaniraCodex;
+import xin.vanilla.banira.client.util.AdvancementCache;
 import xin.vanilla.banira.common.data.ArraySet;
-import xin.vanilla.banira.common.network.packet.RequestToBoth;
 import xin.vanilla.banira.internal.network.NetworkInit;
 import xin.vanilla.banira.internal.network.data.AdvancementData;
+import xin.vanilla.banira.internal.network.data.AdvancementDigest;
+import xin.vanilla.banira.internal.network.packet.AdvancementHashToServer;
+import xin.vanilla.banira.internal.network.packet.AdvancementToClient;
 
 import javax.annotation.Nonnull;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -33,9 +38,9 @@ public final class AdvancementUtils {
     private static final ArraySet<AdvancementData> advancementData = new ArraySet<>();
 
     /**
-     * 是否已经向服务器请求过进度数据
+     * 最近一次向服务器发出的进度数据请求
      */
-    private static boolean requestedAdvancementData = false;
+    private static CompletableFuture<AdvancementToClient> pendingRequest;
 
     /**
      * 数据是否已加载完成
@@ -43,33 +48,129 @@ public final class AdvancementUtils {
     @Getter
     private static boolean dataLoaded = false;
 
+    /**
+     * 服务端进度摘要, 首次被客户端请求时计算
+     */
+    private static volatile AdvancementDigest serverDigest;
+
+    /**
+     * 客户端请求时读取的本地缓存及其所属服务器
+     */
+    private static AdvancementDigest cachedDigest = AdvancementDigest.EMPTY;
+    private static String cachedServerKey = "";
+
     /**
      * 确保进度数据已在客户端缓存
      */
     public static void ensureAdvancementData() {
-        if (FMLEnvironment.dist.isClient() && !requestedAdvancementData && advancementData.isEmpty()) {
+        // 仅在尚未请求或上次请求失败时重新请求, 服务端另有频率限制
+        if (FMLEnvironment.dist.isClient() && advancementData.isEmpty()
+                && (pendingRequest == null || pendingRequest.isCompletedExceptionally())) {
             requestAdvancementDataFromServer();
         }
     }
 
     /**
-     * 向服务器请求进度数据
+     * 向服务器请求进度数据</br>
+     * 携带本地缓存的摘要, 服务端据此回复未变化、增量或全量数据
      */
     public static void requestAdvancementDataFromServer() {
-        if (FMLEnvironment.dist.isClient() && !requestedAdvancementData) {
-            requestedAdvancementData = true;
+        if (FMLEnvironment.dist.isClient() && !isLoading()) {
             dataLoaded = false;
-            PacketUtils.sendPacketToServer(NetworkInit.HANDLER.getChannel(),
-                    new RequestToBoth(NetworkInit.REQUEST_ADVANCEMENT_DATA));
-            LOGGER.debug("Request advancement data from server.");
+            String serverKey = DistExecutor.unsafeCallWhenOn(Dist.CLIENT, () -> AdvancementCache::getServerKey);
+            cachedServerKey = serverKey;
+            // 本地缓存在后台线程读取, 读取完成后再发出请求
+            requestAdvancementSync(DistExecutor.unsafeCallWhenOn(Dist.CLIENT, () -> () -> AdvancementCache.loadAsync(serverKey)));
+        }
+    }
+
+    /**
+     * 本地缓存读取完成后携带其摘要发出请求, 读取期间视为正在加载
+     *
+     * @param cache 在客户端主线程完成的本地缓存摘要
+     */
+    private static void requestAdvancementSync(CompletableFuture<AdvancementDigest> cache) {
+        CompletableFuture<AdvancementToClient> request = new CompletableFuture<>();
+        pendingRequest = request;
+        cache.whenComplete((digest, loadError) -> {
+            // 读取期间已清空数据或发出了新的请求
+            if (pendingRequest != request) return;
+            cachedDigest = digest == null ? AdvancementDigest.EMPTY : digest;
+            LOGGER.debug("Request advancement data from server, {} cached items.", cachedDigest.size());
+            try {
+                NetworkInit.HANDLER.request(NetworkInit.ADVANCEMENT_SYNC, new AdvancementHashToServer(cachedDigest)).whenComplete((reply, error) -> {
+                    if (error != null) request.completeExceptionally(error);
+                    else request.complete(reply);
+                });
+            } catch (Throwable t) {
+                request.completeExceptionally(t);
+            }
+        });
+        request.whenComplete((reply, error) -> {
+            if (pendingRequest != request) return;
+            if (error != null) {
+                LOGGER.warn("Failed to request advancement data: {}", error.getMessage());
+            } else {
+                applyAdvancementSync(reply);
+            }
+        });
+    }
+
+    /**
+     * 应用服务端回复的进度数据, 并更新本地缓存
+     */
+    public static void applyAdvancementSync(AdvancementToClient packet) {
+        AdvancementDigest digest;
+        switch (packet.getMode()) {
+            case AdvancementToClient.MODE_UNCHANGED:
+                digest = cachedDigest;
+                break;
+            case AdvancementToClient.MODE_DELTA:
+                Map<Long, AdvancementData> merged = cachedDigest.byHash();
+                for (long hash : packet.getRemoved()) {
+                    merged.remove(hash);
+                }
+                List<AdvancementData> list = new ArrayList<>(merged.values());
+                list.addAll(packet.getAdvancements().asList());
+                digest = AdvancementDigest.of(list);
+                break;
+            default:
+                digest = AdvancementDigest.of(packet.getAdvancements());
+                break;
+        }
+        if (packet.getMode() != AdvancementToClient.MODE_FULL && digest.setHash() != packet.getSetHash()) {
+            // 本地缓存与服务端不一致, 丢弃缓存后重新请求全量数据
+            LOGGER.debug("Advancement cache mismatch, request full data.");
+            cachedDigest = AdvancementDigest.EMPTY;
+            requestAdvancementSync(CompletableFuture.completedFuture(AdvancementDigest.EMPTY));
+            return;
+        }
+        advancementData(digest.advancements());
+        if (packet.getMode() != AdvancementToClient.MODE_UNCHANGED) {
+            String serverKey = cachedServerKey;
+            DistExecutor.unsafeRunWhenOn(Dist.CLIENT, () -> () -> AdvancementCache.save(serverKey, digest));
         }
+        cachedDigest = AdvancementDigest.EMPTY;
+        LOGGER.debug("Advancement data synced, mode {}: {} items", packet.getMode(), digest.size());
+    }
+
+    /**
+     * 获取服务端进度摘要
+     */
+    public static AdvancementDigest advancementDigest() {
+        AdvancementDigest digest = serverDigest;
+        if (digest == null) {
+            digest = AdvancementDigest.of(advancementData());
+            serverDigest = digest;
+        }
+        return digest;
     }
 
     /**
      * 检查数据是否正在加载中
      */
     public static boolean isLoading() {
-        return requestedAdvancementData && !dataLoaded;
+        return pendingRequest != null && !pendingRequest.isDone();
     }
 
     /**
@@ -82,7 +183,12 @@ public final class AdvancementUtils {
     public static void clearAdvancementData() {
         AdvancementUtils.advancementData.clear();
         dataLoaded = false;
-        requestedAdvancementData = false;
+        if (pendingRequest != null) {
+            pendingRequest.cancel(false);
+            pendingRequest = null;
+        }
+        serverDigest = null;
+        cachedDigest = AdvancementDigest.EMPTY;
     }
 
     public static void addAdvancementData(AdvancementData advancementData) {
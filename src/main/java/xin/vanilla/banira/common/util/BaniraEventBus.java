@@ -1,27 +1,46 @@
 package xin.vanilla.banira.common.util;
 
+import it.unimi.dsi.fastutil.longs.LongArrayList;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.ServerPlayerEntity;
 import net.minecraft.server.MinecraftServer;
+import net.minecraft.util.RegistryKey;
+import net.minecraft.util.math.ChunkPos;
 import net.minecraft.world.IWorld;
+import net.minecraft.world.World;
+import net.minecraftforge.event.TickEvent;
 import net.minecraftforge.event.entity.player.PlayerEvent;
 import net.minecraftforge.event.world.ChunkEvent;
 import net.minecraftforge.event.world.WorldEvent;
+import net.minecraftforge.eventbus.api.EventPriority;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.event.server.FMLServerStartedEvent;
 import net.minecraftforge.fml.event.server.FMLServerStartingEvent;
+import net.minecraftforge.fml.event.server.FMLServerStoppedEvent;
 import net.minecraftforge.fml.event.server.FMLServerStoppingEvent;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import xin.vanilla.banira.common.api.IListenerHandle;
+import xin.vanilla.banira.common.data.CallbackList;
+import xin.vanilla.banira.common.data.KeyValue;
+import xin.vanilla.banira.common.data.PlayerEventSnapshot;
+import xin.vanilla.banira.common.data.StripedExecutor;
 
 import javax.annotation.Nonnull;
-import java.util.ArrayList;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 
 /**
  * 事件总线工具类</br>
- * 用于统一管理游戏事件的监听和回调
+ * 用于统一管理游戏事件的监听和回调</br>
+ * 回调按 {@link EventPriority} 顺序执行, 注册方法返回的 {@link IListenerHandle} 可用于注销,
+ * 早期版本已有的不带优先级的注册方法为保持兼容仍无返回值, 需要注销时使用带优先级的重载,
+ * 回调中调用 {@link #cancelEvent()} 可阻止后续回调执行</br>
+ * 以 Async 结尾的注册方法将回调放到工作线程执行, 参数为事件触发时的快照, 同一玩家的异步回调按事件顺序执行
  */
 public final class BaniraEventBus {
     private BaniraEventBus() {
@@ -30,23 +49,51 @@ public final class BaniraEventBus {
     private static final Logger LOGGER = LogManager.getLogger();
 
     // 服务器事件回调列表
-    private static final List<Consumer<MinecraftServer>> serverStartingCallbacks = new ArrayList<>();
-    private static final List<Consumer<MinecraftServer>> serverStartedCallbacks = new ArrayList<>();
-    private static final List<Consumer<MinecraftServer>> serverStoppingCallbacks = new ArrayList<>();
+    private static final CallbackList<MinecraftServer> serverStartingCallbacks = new CallbackList<>("server starting");
+    private static final CallbackList<MinecraftServer> serverStartedCallbacks = new CallbackList<>("server started");
+    private static final CallbackList<MinecraftServer> serverStoppingCallbacks = new CallbackList<>("server stopping");
+    private static final CallbackList<MinecraftServer> serverStoppedCallbacks = new CallbackList<>("server stopped");
 
     // 玩家事件回调列表
-    private static final List<Consumer<PlayerEntity>> playerLoggedInCallbacks = new ArrayList<>();
-    private static final List<Consumer<PlayerEntity>> playerLoggedOutCallbacks = new ArrayList<>();
-    private static final List<Consumer<PlayerEvent.PlayerChangedDimensionEvent>> playerChangedDimensionCallbacks = new ArrayList<>();
+    private static final CallbackList<PlayerEntity> playerLoggedInCallbacks = new CallbackList<>("player logged in");
+    private static final CallbackList<PlayerEntity> playerLoggedOutCallbacks = new CallbackList<>("player logged out");
+    private static final CallbackList<PlayerEvent.PlayerChangedDimensionEvent> playerChangedDimensionCallbacks = new CallbackList<>("player changed dimension");
 
     // 保存事件回调列表
-    private static final List<Runnable> worldSaveCallbacks = new ArrayList<>();
-    private static final List<Runnable> chunkSaveCallbacks = new ArrayList<>();
-    private static final List<Consumer<ServerPlayerEntity>> playerSaveCallbacks = new ArrayList<>();
+    private static final CallbackList<Void> worldSaveCallbacks = new CallbackList<>("world save");
+    private static final CallbackList<ChunkEvent.Save> chunkSaveCallbacks = new CallbackList<>("chunk save");
+    private static final CallbackList<KeyValue<IWorld, long[]>> chunkSaveBatchCallbacks = new CallbackList<>("chunk save batch");
+    private static final CallbackList<ServerPlayerEntity> playerSaveCallbacks = new CallbackList<>("player save");
+
+    /**
+     * 当前 tick 内保存的区块, 按世界分组, 于 tick 结束时合并回调
+     */
+    private static final Map<IWorld, LongArrayList> pendingChunkSaves = new IdentityHashMap<>();
+
+    // 异步回调列表
+    private static final CallbackList<PlayerEventSnapshot> playerLoggedInAsyncCallbacks = new CallbackList<>("player logged in (async)");
+    private static final CallbackList<PlayerEventSnapshot> playerLoggedOutAsyncCallbacks = new CallbackList<>("player logged out (async)");
+    private static final CallbackList<PlayerEventSnapshot> playerChangedDimensionAsyncCallbacks = new CallbackList<>("player changed dimension (async)");
+    private static final CallbackList<PlayerEventSnapshot> playerSaveAsyncCallbacks = new CallbackList<>("player save (async)");
+    private static final CallbackList<Void> worldSaveAsyncCallbacks = new CallbackList<>("world save (async)");
+
+    /**
+     * 异步回调执行器, 按玩家 UUID 分段以保证同一玩家的事件顺序
+     */
+    private static final StripedExecutor asyncExecutor = new StripedExecutor("BaniraEventBus-Async"
+            , Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+    /**
+     * 世界保存等非玩家事件使用的分段键
+     */
+    private static final Object WORLD_KEY = new Object();
+    /**
+     * 服务器关闭时等待异步回调执行完毕的最长时间(秒)
+     */
+    private static final long ASYNC_SHUTDOWN_TIMEOUT_SECONDS = 10;
 
     // 客户端事件回调列表（例如界面变化、纹理重载）
-    private static final List<Runnable> clientGuiChangedCallbacks = new ArrayList<>();
-    private static final List<Runnable> clientTextureReloadCallbacks = new ArrayList<>();
+    private static final CallbackList<Void> clientGuiChangedCallbacks = new CallbackList<>("client gui changed");
+    private static final CallbackList<Void> clientTextureReloadCallbacks = new CallbackList<>("client texture reload");
 
 
     // region 服务器事件注册
@@ -55,21 +102,44 @@ public final class BaniraEventBus {
      * 注册服务器启动时回调（FMLServerStartingEvent）
      */
     public static void registerServerStarting(@Nonnull Consumer<MinecraftServer> callback) {
-        serverStartingCallbacks.add(callback);
+        registerServerStarting(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerServerStarting(@Nonnull EventPriority priority, @Nonnull Consumer<MinecraftServer> callback) {
+        return serverStartingCallbacks.register(priority, callback);
     }
 
     /**
      * 注册服务器已启动时回调（FMLServerStartedEvent）
      */
     public static void registerServerStarted(@Nonnull Consumer<MinecraftServer> callback) {
-        serverStartedCallbacks.add(callback);
+        registerServerStarted(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerServerStarted(@Nonnull EventPriority priority, @Nonnull Consumer<MinecraftServer> callback) {
+        return serverStartedCallbacks.register(priority, callback);
     }
 
     /**
      * 注册服务器关闭时回调（FMLServerStoppingEvent）
      */
     public static void registerServerStopping(@Nonnull Consumer<MinecraftServer> callback) {
-        serverStoppingCallbacks.add(callback);
+        registerServerStopping(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerServerStopping(@Nonnull EventPriority priority, @Nonnull Consumer<MinecraftServer> callback) {
+        return serverStoppingCallbacks.register(priority, callback);
+    }
+
+    /**
+     * 注册服务器已关闭时回调（FMLServerStoppedEvent）, 此时玩家数据的最终保存已完成
+     */
+    public static IListenerHandle registerServerStopped(@Nonnull Consumer<MinecraftServer> callback) {
+        return registerServerStopped(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerServerStopped(@Nonnull EventPriority priority, @Nonnull Consumer<MinecraftServer> callback) {
+        return serverStoppedCallbacks.register(priority, callback);
     }
 
     // endregion
@@ -80,14 +150,22 @@ public final class BaniraEventBus {
      * 注册玩家进入服务器时回调（PlayerEvent.PlayerLoggedInEvent）
      */
     public static void registerPlayerLoggedIn(@Nonnull Consumer<PlayerEntity> callback) {
-        playerLoggedInCallbacks.add(callback);
+        registerPlayerLoggedIn(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerPlayerLoggedIn(@Nonnull EventPriority priority, @Nonnull Consumer<PlayerEntity> callback) {
+        return playerLoggedInCallbacks.register(priority, callback);
     }
 
     /**
      * 注册玩家退出服务器时回调（PlayerEvent.PlayerLoggedOutEvent）
      */
     public static void registerPlayerLoggedOut(@Nonnull Consumer<PlayerEntity> callback) {
-        playerLoggedOutCallbacks.add(callback);
+        registerPlayerLoggedOut(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerPlayerLoggedOut(@Nonnull EventPriority priority, @Nonnull Consumer<PlayerEntity> callback) {
+        return playerLoggedOutCallbacks.register(priority, callback);
     }
 
     /**
@@ -96,7 +174,11 @@ public final class BaniraEventBus {
      *
      */
     public static void registerPlayerChangedDimension(@Nonnull Consumer<PlayerEvent.PlayerChangedDimensionEvent> callback) {
-        playerChangedDimensionCallbacks.add(callback);
+        registerPlayerChangedDimension(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerPlayerChangedDimension(@Nonnull EventPriority priority, @Nonnull Consumer<PlayerEvent.PlayerChangedDimensionEvent> callback) {
+        return playerChangedDimensionCallbacks.register(priority, callback);
     }
 
     /**
@@ -104,23 +186,31 @@ public final class BaniraEventBus {
      * 仅当玩家进入新维度时触发
      */
     public static void registerPlayerEnterDimension(@Nonnull Consumer<ServerPlayerEntity> callback) {
-        playerChangedDimensionCallbacks.add(event -> {
+        registerPlayerEnterDimension(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerPlayerEnterDimension(@Nonnull EventPriority priority, @Nonnull Consumer<ServerPlayerEntity> callback) {
+        return playerChangedDimensionCallbacks.register(priority, event -> {
             if (event.getPlayer() instanceof ServerPlayerEntity) {
                 callback.accept((ServerPlayerEntity) event.getPlayer());
             }
-        });
+        }, callback);
     }
 
     /**
      * 注册玩家退出维度时回调（PlayerEvent.PlayerChangedDimensionEvent）
      * 仅当玩家退出维度时触发
      */
-    public static void registerPlayerExitDimension(@Nonnull java.util.function.BiConsumer<ServerPlayerEntity, net.minecraft.util.RegistryKey<net.minecraft.world.World>> callback) {
-        playerChangedDimensionCallbacks.add(event -> {
+    public static void registerPlayerExitDimension(@Nonnull BiConsumer<ServerPlayerEntity, RegistryKey<World>> callback) {
+        registerPlayerExitDimension(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerPlayerExitDimension(@Nonnull EventPriority priority, @Nonnull BiConsumer<ServerPlayerEntity, RegistryKey<World>> callback) {
+        return playerChangedDimensionCallbacks.register(priority, event -> {
             if (event.getPlayer() instanceof ServerPlayerEntity) {
                 callback.accept((ServerPlayerEntity) event.getPlayer(), event.getFrom());
             }
-        });
+        }, callback);
     }
 
     // endregion
@@ -131,35 +221,219 @@ public final class BaniraEventBus {
      * 注册世界保存时回调（WorldEvent.Save）
      */
     public static void registerWorldSave(@Nonnull Runnable callback) {
-        worldSaveCallbacks.add(callback);
+        registerWorldSave(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerWorldSave(@Nonnull EventPriority priority, @Nonnull Runnable callback) {
+        return registerRunnable(worldSaveCallbacks, priority, callback);
     }
 
     /**
      * 注册区块保存时回调（ChunkEvent.Save）
+     *
+     * @deprecated 每个区块保存时均会执行且无法区分区块, 请使用 {@link #registerChunkSave(BiConsumer)} 或 {@link #registerChunkSaveBatch(BiConsumer)}
      */
+    @Deprecated
     public static void registerChunkSave(@Nonnull Runnable callback) {
-        chunkSaveCallbacks.add(callback);
+        registerChunkSave(EventPriority.NORMAL, callback);
+    }
+
+    /**
+     * @deprecated 请使用 {@link #registerChunkSave(EventPriority, BiConsumer)} 或 {@link #registerChunkSaveBatch(EventPriority, BiConsumer)}
+     */
+    @Deprecated
+    public static IListenerHandle registerChunkSave(@Nonnull EventPriority priority, @Nonnull Runnable callback) {
+        return chunkSaveCallbacks.register(priority, event -> callback.run(), callback);
+    }
+
+    /**
+     * 注册区块保存时回调（ChunkEvent.Save）</br>
+     * 每个区块保存时执行一次, 参数为所在世界与区块坐标
+     */
+    public static IListenerHandle registerChunkSave(@Nonnull BiConsumer<IWorld, ChunkPos> callback) {
+        return registerChunkSave(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerChunkSave(@Nonnull EventPriority priority, @Nonnull BiConsumer<IWorld, ChunkPos> callback) {
+        return chunkSaveCallbacks.register(priority, event -> callback.accept(event.getWorld(), event.getChunk().getPos()), callback);
+    }
+
+    /**
+     * 注册区块批量保存时回调（ChunkEvent.Save）</br>
+     * 同一 tick 内同一世界保存的所有区块合并为一次回调, 于 tick 结束或服务器关闭后执行,
+     * 参数为所在世界与区块坐标键数组(见 {@link ChunkPos#toLong()}, 可通过 {@link ChunkPos#getX(long)} 与 {@link ChunkPos#getZ(long)} 还原)
+     */
+    public static IListenerHandle registerChunkSaveBatch(@Nonnull BiConsumer<IWorld, long[]> callback) {
+        return registerChunkSaveBatch(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerChunkSaveBatch(@Nonnull EventPriority priority, @Nonnull BiConsumer<IWorld, long[]> callback) {
+        return chunkSaveBatchCallbacks.register(priority, batch -> callback.accept(batch.key(), batch.val()), callback);
     }
 
     /**
      * 注册玩家数据保存时回调（PlayerEvent.SaveToFile）
      */
     public static void registerPlayerSave(@Nonnull Consumer<ServerPlayerEntity> callback) {
-        playerSaveCallbacks.add(callback);
+        registerPlayerSave(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerPlayerSave(@Nonnull EventPriority priority, @Nonnull Consumer<ServerPlayerEntity> callback) {
+        return playerSaveCallbacks.register(priority, callback);
     }
 
     /**
      * 注册客户端界面变化时回调（由客户端事件处理器触发）
      */
     public static void registerClientGuiChanged(@Nonnull Runnable callback) {
-        clientGuiChangedCallbacks.add(callback);
+        registerClientGuiChanged(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerClientGuiChanged(@Nonnull EventPriority priority, @Nonnull Runnable callback) {
+        return registerRunnable(clientGuiChangedCallbacks, priority, callback);
     }
 
     /**
      * 注册客户端纹理重载后回调（由客户端事件处理器触发）
      */
     public static void registerClientTextureReload(@Nonnull Runnable callback) {
-        clientTextureReloadCallbacks.add(callback);
+        registerClientTextureReload(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerClientTextureReload(@Nonnull EventPriority priority, @Nonnull Runnable callback) {
+        return registerRunnable(clientTextureReloadCallbacks, priority, callback);
+    }
+
+    // endregion
+
+    // region 异步事件注册
+
+    /**
+     * 注册玩家进入服务器时的异步回调（PlayerEvent.PlayerLoggedInEvent）
+     */
+    public static IListenerHandle registerPlayerLoggedInAsync(@Nonnull Consumer<PlayerEventSnapshot> callback) {
+        return registerPlayerLoggedInAsync(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerPlayerLoggedInAsync(@Nonnull EventPriority priority, @Nonnull Consumer<PlayerEventSnapshot> callback) {
+        return playerLoggedInAsyncCallbacks.register(priority, callback);
+    }
+
+    /**
+     * 注册玩家退出服务器时的异步回调（PlayerEvent.PlayerLoggedOutEvent）
+     */
+    public static IListenerHandle registerPlayerLoggedOutAsync(@Nonnull Consumer<PlayerEventSnapshot> callback) {
+        return registerPlayerLoggedOutAsync(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerPlayerLoggedOutAsync(@Nonnull EventPriority priority, @Nonnull Consumer<PlayerEventSnapshot> callback) {
+        return playerLoggedOutAsyncCallbacks.register(priority, callback);
+    }
+
+    /**
+     * 注册玩家维度变化时的异步回调（PlayerEvent.PlayerChangedDimensionEvent）</br>
+     * 快照中的 {@link PlayerEventSnapshot#from()} 与 {@link PlayerEventSnapshot#to()} 为来源与目标维度
+     */
+    public static IListenerHandle registerPlayerChangedDimensionAsync(@Nonnull Consumer<PlayerEventSnapshot> callback) {
+        return registerPlayerChangedDimensionAsync(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerPlayerChangedDimensionAsync(@Nonnull EventPriority priority, @Nonnull Consumer<PlayerEventSnapshot> callback) {
+        return playerChangedDimensionAsyncCallbacks.register(priority, callback);
+    }
+
+    /**
+     * 注册玩家数据保存时的异步回调（PlayerEvent.SaveToFile）
+     */
+    public static IListenerHandle registerPlayerSaveAsync(@Nonnull Consumer<PlayerEventSnapshot> callback) {
+        return registerPlayerSaveAsync(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerPlayerSaveAsync(@Nonnull EventPriority priority, @Nonnull Consumer<PlayerEventSnapshot> callback) {
+        return playerSaveAsyncCallbacks.register(priority, callback);
+    }
+
+    /**
+     * 注册世界保存时的异步回调（WorldEvent.Save）
+     */
+    public static IListenerHandle registerWorldSaveAsync(@Nonnull Runnable callback) {
+        return registerWorldSaveAsync(EventPriority.NORMAL, callback);
+    }
+
+    public static IListenerHandle registerWorldSaveAsync(@Nonnull EventPriority priority, @Nonnull Runnable callback) {
+        return registerRunnable(worldSaveAsyncCallbacks, priority, callback);
+    }
+
+    /**
+     * 等待此前触发的异步回调执行完毕
+     *
+     * @return 是否在超时前全部执行完毕
+     */
+    public static boolean awaitAsyncCallbacks(long timeout, TimeUnit unit) {
+        return asyncExecutor.awaitQuiescence(timeout, unit);
+    }
+
+    // endregion
+
+    // region 事件取消
+
+    /**
+     * 取消当前正在分发的事件, 优先级更低的回调将不再执行</br>
+     * 只能在回调中调用
+     */
+    public static void cancelEvent() {
+        CallbackList.cancel();
+    }
+
+    /**
+     * 当前正在分发的事件是否已被取消
+     */
+    public static boolean isEventCancelled() {
+        return CallbackList.isCancelled();
+    }
+
+    // endregion
+
+    // region 性能分析
+
+    /**
+     * 开启或关闭回调耗时分布记录, 关闭时几乎没有额外开销
+     */
+    public static void setProfiling(boolean enabled) {
+        CallbackList.setProfiling(enabled);
+    }
+
+    public static boolean isProfiling() {
+        return CallbackList.isProfiling();
+    }
+
+    /**
+     * 设置慢回调警告阈值
+     *
+     * @param millis 单次回调耗时阈值(毫秒), 小于等于 0 表示不检查; 未开启性能分析时只检查抽样计时的分发
+     */
+    public static void setSlowListenerThreshold(double millis) {
+        CallbackList.setSlowListenerNanos((long) (millis * 1_000_000));
+    }
+
+    public static double getSlowListenerThreshold() {
+        return CallbackList.getSlowListenerNanos() / 1_000_000.0;
+    }
+
+    /**
+     * 获取开启性能分析以来累计耗时最长的回调
+     *
+     * @param limit 最大数量
+     */
+    public static List<CallbackList.Listener<?>> getTopListeners(int limit) {
+        return CallbackList.topListeners(limit);
+    }
+
+    /**
+     * 清空回调耗时记录
+     */
+    public static void resetProfiling() {
+        CallbackList.resetProfiling();
     }
 
     // endregion
@@ -168,37 +442,35 @@ public final class BaniraEventBus {
 
     @SubscribeEvent
     public static void onServerStarting(FMLServerStartingEvent event) {
-        MinecraftServer server = event.getServer();
-        executeCallbacks(serverStartingCallbacks, server, "server starting");
+        serverStartingCallbacks.dispatch(event.getServer());
     }
 
     @SubscribeEvent
     public static void onServerStarted(FMLServerStartedEvent event) {
-        MinecraftServer server = event.getServer();
-        executeCallbacks(serverStartedCallbacks, server, "server started");
+        serverStartedCallbacks.dispatch(event.getServer());
     }
 
     @SubscribeEvent
     public static void onServerStopping(FMLServerStoppingEvent event) {
-        MinecraftServer server = event.getServer();
-        executeCallbacks(serverStoppingCallbacks, server, "server stopping");
+        serverStoppingCallbacks.dispatch(event.getServer());
     }
 
     @SubscribeEvent
     public static void onPlayerLoggedIn(PlayerEvent.PlayerLoggedInEvent event) {
-        PlayerEntity player = event.getPlayer();
-        executeCallbacks(playerLoggedInCallbacks, player, "player logged in");
+        playerLoggedInCallbacks.dispatch(event.getPlayer());
+        dispatchAsync(playerLoggedInAsyncCallbacks, event.getPlayer(), null, null);
     }
 
     @SubscribeEvent
     public static void onPlayerLoggedOut(PlayerEvent.PlayerLoggedOutEvent event) {
-        PlayerEntity player = event.getPlayer();
-        executeCallbacks(playerLoggedOutCallbacks, player, "player logged out");
+        playerLoggedOutCallbacks.dispatch(event.getPlayer());
+        dispatchAsync(playerLoggedOutAsyncCallbacks, event.getPlayer(), null, null);
     }
 
     @SubscribeEvent
     public static void onPlayerChangedDimension(PlayerEvent.PlayerChangedDimensionEvent event) {
-        executeCallbacks(playerChangedDimensionCallbacks, event, "player changed dimension");
+        playerChangedDimensionCallbacks.dispatch(event);
+        dispatchAsync(playerChangedDimensionAsyncCallbacks, event.getPlayer(), event.getFrom(), event.getTo());
     }
 
     @SubscribeEvent
@@ -206,7 +478,10 @@ public final class BaniraEventBus {
         IWorld world = event.getWorld();
         // 只在服务端世界保存时触发
         if (!world.isClientSide()) {
-            executeRunnableCallbacks(worldSaveCallbacks, "world save");
+            worldSaveCallbacks.dispatch(null);
+            if (!worldSaveAsyncCallbacks.isEmpty()) {
+                asyncExecutor.execute(WORLD_KEY, () -> worldSaveAsyncCallbacks.dispatch(null));
+            }
         }
     }
 
@@ -215,7 +490,30 @@ public final class BaniraEventBus {
         IWorld world = event.getWorld();
         // 只在服务端区块保存时触发
         if (world != null && !world.isClientSide()) {
-            executeRunnableCallbacks(chunkSaveCallbacks, "chunk save");
+            chunkSaveCallbacks.dispatch(event);
+            if (!chunkSaveBatchCallbacks.isEmpty()) {
+                long key = event.getChunk().getPos().toLong();
+                synchronized (pendingChunkSaves) {
+                    pendingChunkSaves.computeIfAbsent(world, k -> new LongArrayList()).add(key);
+                }
+            }
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerTick(TickEvent.ServerTickEvent event) {
+        if (event.phase == TickEvent.Phase.END) {
+            flushChunkSaves();
+        }
+    }
+
+    @SubscribeEvent
+    public static void onServerStopped(FMLServerStoppedEvent event) {
+        // 关闭时的最终保存发生在最后一个 tick 之后
+        flushChunkSaves();
+        serverStoppedCallbacks.dispatch(event.getServer());
+        if (!awaitAsyncCallbacks(ASYNC_SHUTDOWN_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            LOGGER.warn("Async event callbacks did not finish within {} seconds after server stopped", ASYNC_SHUTDOWN_TIMEOUT_SECONDS);
         }
     }
 
@@ -223,7 +521,8 @@ public final class BaniraEventBus {
     public static void onPlayerSaveToFile(PlayerEvent.SaveToFile event) {
         PlayerEntity player = event.getPlayer();
         if (player instanceof ServerPlayerEntity) {
-            executeCallbacks(playerSaveCallbacks, (ServerPlayerEntity) player, "player save");
+            playerSaveCallbacks.dispatch((ServerPlayerEntity) player);
+            dispatchAsync(playerSaveAsyncCallbacks, player, null, null);
         }
     }
 
@@ -231,14 +530,14 @@ public final class BaniraEventBus {
      * 客户端界面变化
      */
     public static void fireClientGuiChanged() {
-        executeRunnableCallbacks(clientGuiChangedCallbacks, "client gui changed");
+        clientGuiChangedCallbacks.dispatch(null);
     }
 
     /**
      * 客户端纹理重载
      */
     public static void fireClientTextureReload() {
-        executeRunnableCallbacks(clientTextureReloadCallbacks, "client texture reload");
+        clientTextureReloadCallbacks.dispatch(null);
     }
 
     // endregion
@@ -246,31 +545,36 @@ public final class BaniraEventBus {
     // region 工具方法
 
     /**
-     * 执行回调函数列表
+     * 在当前线程生成快照, 并将异步回调提交到该玩家所在的分段
      */
-    private static <T> void executeCallbacks(List<Consumer<T>> callbacks, T parameter, String eventName) {
-        for (Consumer<T> callback : callbacks) {
-            try {
-                callback.accept(parameter);
-            } catch (Throwable t) {
-                LOGGER.warn("Error executing callback for {} event", eventName, t);
-            }
-        }
+    private static void dispatchAsync(CallbackList<PlayerEventSnapshot> callbacks, PlayerEntity player, RegistryKey<World> from, RegistryKey<World> to) {
+        if (callbacks.isEmpty() || player == null) return;
+        PlayerEventSnapshot snapshot = PlayerEventSnapshot.of(player, from, to);
+        asyncExecutor.execute(snapshot.uuid(), () -> callbacks.dispatch(snapshot));
     }
 
     /**
-     * 执行无参数回调函数列表
+     * 执行合并后的区块保存回调
      */
-    private static void executeRunnableCallbacks(List<Runnable> callbacks, String eventName) {
-        for (Runnable callback : callbacks) {
-            try {
-                callback.run();
-            } catch (Throwable t) {
-                LOGGER.warn("Error executing callback for {} event", eventName, t);
-            }
+    private static void flushChunkSaves() {
+        Map<IWorld, LongArrayList> batches;
+        synchronized (pendingChunkSaves) {
+            if (pendingChunkSaves.isEmpty()) return;
+            batches = new IdentityHashMap<>(pendingChunkSaves);
+            pendingChunkSaves.clear();
+        }
+        for (Map.Entry<IWorld, LongArrayList> entry : batches.entrySet()) {
+            chunkSaveBatchCallbacks.dispatch(new KeyValue<>(entry.getKey(), entry.getValue().toLongArray()));
         }
     }
 
+    /**
+     * 注册无参数回调
+     */
+    private static IListenerHandle registerRunnable(CallbackList<Void> callbacks, EventPriority priority, Runnable callback) {
+        return callbacks.register(priority, o -> callback.run(), callback);
+    }
+
     // endregion
 
 }
@@ -9,10 +9,21 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import xin.vanilla.banira.BaniraCodex;
 import xin.vanilla.banira.common.data.ScheduledTask;
+import xin.vanilla.banira.common.data.SchedulerLane;
+import xin.vanilla.banira.common.data.TaskStatistics;
+import xin.vanilla.banira.common.enums.EnumScheduleMode;
+import xin.vanilla.banira.common.enums.EnumTaskPriority;
 
 import javax.annotation.Nonnull;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 
 public final class BaniraScheduler {
     private BaniraScheduler() {
@@ -20,24 +31,247 @@ public final class BaniraScheduler {
 
     private static final Logger LOGGER = LogManager.getLogger();
 
-    private static final PriorityBlockingQueue<ScheduledTask> serverTasks = new PriorityBlockingQueue<>();
-    private static final PriorityBlockingQueue<ScheduledTask> clientTasks = new PriorityBlockingQueue<>();
+    private static final SchedulerLane serverLane = new SchedulerLane(false);
+    private static final SchedulerLane clientLane = new SchedulerLane(true);
 
-
-    private static final AtomicLong serverExecutedCount = new AtomicLong(0);
-    private static final AtomicLong clientExecutedCount = new AtomicLong(0);
     private static final AtomicLong clientTicks = new AtomicLong(0);
 
+    /**
+     * 异步任务线程池容量
+     */
+    private static final int ASYNC_POOL_SIZE = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    private static final int ASYNC_QUEUE_CAPACITY = 1024;
+
+    /**
+     * 异步任务线程池, 有界队列, 满载时拒绝新任务
+     */
+    private static final ThreadPoolExecutor asyncExecutor = createAsyncExecutor();
+
+
+    private static ThreadPoolExecutor createAsyncExecutor() {
+        AtomicInteger threadIndex = new AtomicInteger(0);
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(ASYNC_POOL_SIZE, ASYNC_POOL_SIZE
+                , 60L, TimeUnit.SECONDS
+                , new LinkedBlockingQueue<>(ASYNC_QUEUE_CAPACITY)
+                , runnable -> {
+            Thread thread = new Thread(runnable, "BaniraScheduler-Async-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
 
+    /**
+     * 延迟指定 tick 后在服务端主线程执行</br>
+     * 需要取消或标记任务时使用指定优先级的重载获取 {@link ScheduledTask}
+     */
     public static void schedule(@Nonnull MinecraftServer server, int delayTicks, @Nonnull Runnable action) {
-        long executeAt = server.getTickCount() + Math.max(0, delayTicks);
-        serverTasks.add(ScheduledTask.server(executeAt, action));
+        schedule(server, delayTicks, EnumTaskPriority.NORMAL, action);
+    }
+
+    public static ScheduledTask schedule(@Nonnull MinecraftServer server, int delayTicks, @Nonnull EnumTaskPriority priority, @Nonnull Runnable action) {
+        return serverLane.schedule(server::getTickCount, delayTicks, priority, action);
+    }
+
+    /**
+     * 延迟指定 tick 后在服务端主线程执行, 所有者与标签在提交前设置, 不会漏计入统计
+     *
+     * @param owner 所有者 modId
+     * @param label 任务标签
+     */
+    public static ScheduledTask schedule(@Nonnull MinecraftServer server, int delayTicks, @Nonnull EnumTaskPriority priority, String owner, String label, @Nonnull Runnable action) {
+        return serverLane.schedule(server::getTickCount, delayTicks, priority, owner, label, action);
+    }
+
+    /**
+     * 按固定频率重复执行, 错过的周期会被跳过而不是集中补执行
+     *
+     * @param initialDelayTicks 首次执行前的延迟 tick 数
+     * @param periodTicks       周期 tick 数
+     */
+    public static ScheduledTask scheduleAtFixedRate(@Nonnull MinecraftServer server, int initialDelayTicks, int periodTicks, @Nonnull Runnable action) {
+        return scheduleAtFixedRate(server, initialDelayTicks, periodTicks, EnumTaskPriority.NORMAL, action);
     }
 
+    public static ScheduledTask scheduleAtFixedRate(@Nonnull MinecraftServer server, int initialDelayTicks, int periodTicks, @Nonnull EnumTaskPriority priority, @Nonnull Runnable action) {
+        return serverLane.scheduleRepeating(server::getTickCount, initialDelayTicks, EnumScheduleMode.FIXED_RATE, periodTicks, priority, action);
+    }
+
+    /**
+     * 按固定间隔重复执行, 间隔从每次实际执行的 tick 开始计算
+     *
+     * @param initialDelayTicks 首次执行前的延迟 tick 数
+     * @param delayTicks        间隔 tick 数
+     */
+    public static ScheduledTask scheduleWithFixedDelay(@Nonnull MinecraftServer server, int initialDelayTicks, int delayTicks, @Nonnull Runnable action) {
+        return scheduleWithFixedDelay(server, initialDelayTicks, delayTicks, EnumTaskPriority.NORMAL, action);
+    }
+
+    public static ScheduledTask scheduleWithFixedDelay(@Nonnull MinecraftServer server, int initialDelayTicks, int delayTicks, @Nonnull EnumTaskPriority priority, @Nonnull Runnable action) {
+        return serverLane.scheduleRepeating(server::getTickCount, initialDelayTicks, EnumScheduleMode.FIXED_DELAY, delayTicks, priority, action);
+    }
+
+    /**
+     * 每天在指定现实时间执行
+     *
+     * @param time 时间, 格式为 {@link DateUtils#HM_FORMAT}, 如 04:00
+     */
+    public static ScheduledTask scheduleDaily(@Nonnull MinecraftServer server, @Nonnull String time, @Nonnull Runnable action) {
+        Date date = DateUtils.format(time, DateUtils.HM_FORMAT);
+        if (date == null) {
+            throw new IllegalArgumentException("Invalid daily time: " + time);
+        }
+        int hour = DateUtils.getHourOfDay(date);
+        int minute = DateUtils.getMinuteOfHour(date);
+        return scheduleAt(server, current -> DateUtils.getNextDailyTime(current, hour, minute), action);
+    }
+
+    /**
+     * 按现实时间重复执行
+     *
+     * @param nextFireTime 根据当前时间计算下次触发时间, 返回 null 表示不再执行,
+     *                     可结合 {@link DateUtils#getNextDailyTime}, {@link DateUtils#getNextWeeklyTime} 使用
+     */
+    public static ScheduledTask scheduleAt(@Nonnull MinecraftServer server, @Nonnull UnaryOperator<Date> nextFireTime, @Nonnull Runnable action) {
+        return scheduleAt(server, nextFireTime, EnumTaskPriority.NORMAL, action);
+    }
+
+    public static ScheduledTask scheduleAt(@Nonnull MinecraftServer server, @Nonnull UnaryOperator<Date> nextFireTime, @Nonnull EnumTaskPriority priority, @Nonnull Runnable action) {
+        return serverLane.scheduleAt(server::getTickCount, nextFireTime, priority, action);
+    }
+
+    /**
+     * 延迟指定 tick 后在异步线程池中执行耗时操作, 并在服务端主线程完成返回的 Future</br>
+     * 因此通过 thenAccept 等非 Async 方法挂载的后续操作均在服务端主线程执行
+     *
+     * @param delayTicks 延迟 tick 数, 小于等于 0 时立即提交
+     * @param supplier   在异步线程中执行的操作, 不应访问世界等非线程安全的对象
+     */
+    public static <T> CompletableFuture<T> scheduleAsync(@Nonnull MinecraftServer server, int delayTicks, @Nonnull Supplier<T> supplier) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (delayTicks <= 0) {
+            submitAsync(serverLane, supplier, future);
+        } else {
+            schedule(server, delayTicks, () -> submitAsync(serverLane, supplier, future));
+        }
+        return future;
+    }
+
+    /**
+     * 延迟指定 tick 后在客户端主线程执行</br>
+     * 需要取消或标记任务时使用指定优先级的重载获取 {@link ScheduledTask}
+     */
     @OnlyIn(Dist.CLIENT)
     public static void schedule(int delayTicks, @Nonnull Runnable action) {
-        long executeAt = clientTicks.get() + Math.max(0, delayTicks);
-        clientTasks.add(ScheduledTask.client(executeAt, action));
+        schedule(delayTicks, EnumTaskPriority.NORMAL, action);
+    }
+
+    @OnlyIn(Dist.CLIENT)
+    public static ScheduledTask schedule(int delayTicks, @Nonnull EnumTaskPriority priority, @Nonnull Runnable action) {
+        return clientLane.schedule(clientTicks::get, delayTicks, priority, action);
+    }
+
+    /**
+     * 延迟指定 tick 后在客户端主线程执行, 所有者与标签在提交前设置, 不会漏计入统计
+     *
+     * @param owner 所有者 modId
+     * @param label 任务标签
+     */
+    @OnlyIn(Dist.CLIENT)
+    public static ScheduledTask schedule(int delayTicks, @Nonnull EnumTaskPriority priority, String owner, String label, @Nonnull Runnable action) {
+        return clientLane.schedule(clientTicks::get, delayTicks, priority, owner, label, action);
+    }
+
+    /**
+     * 按固定频率重复执行, 错过的周期会被跳过而不是集中补执行
+     *
+     * @param initialDelayTicks 首次执行前的延迟 tick 数
+     * @param periodTicks       周期 tick 数
+     */
+    @OnlyIn(Dist.CLIENT)
+    public static ScheduledTask scheduleAtFixedRate(int initialDelayTicks, int periodTicks, @Nonnull Runnable action) {
+        return clientLane.scheduleRepeating(clientTicks::get, initialDelayTicks, EnumScheduleMode.FIXED_RATE, periodTicks, EnumTaskPriority.NORMAL, action);
+    }
+
+    /**
+     * 按固定间隔重复执行, 间隔从每次实际执行的 tick 开始计算
+     *
+     * @param initialDelayTicks 首次执行前的延迟 tick 数
+     * @param delayTicks        间隔 tick 数
+     */
+    @OnlyIn(Dist.CLIENT)
+    public static ScheduledTask scheduleWithFixedDelay(int initialDelayTicks, int delayTicks, @Nonnull Runnable action) {
+        return clientLane.scheduleRepeating(clientTicks::get, initialDelayTicks, EnumScheduleMode.FIXED_DELAY, delayTicks, EnumTaskPriority.NORMAL, action);
+    }
+
+    /**
+     * 延迟指定 tick 后在异步线程池中执行耗时操作, 并在客户端主线程完成返回的 Future</br>
+     * 因此通过 thenAccept 等非 Async 方法挂载的后续操作均在客户端主线程执行
+     *
+     * @param delayTicks 延迟 tick 数, 小于等于 0 时立即提交
+     * @param supplier   在异步线程中执行的操作, 不应访问世界等非线程安全的对象
+     */
+    @OnlyIn(Dist.CLIENT)
+    public static <T> CompletableFuture<T> scheduleAsync(int delayTicks, @Nonnull Supplier<T> supplier) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        if (delayTicks <= 0) {
+            submitAsync(clientLane, supplier, future);
+        } else {
+            schedule(delayTicks, () -> submitAsync(clientLane, supplier, future));
+        }
+        return future;
+    }
+
+    /**
+     * 在异步线程池中执行操作, 不回到主线程
+     */
+    public static CompletableFuture<Void> executeAsync(@Nonnull Runnable action) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            asyncExecutor.execute(() -> {
+                try {
+                    action.run();
+                    future.complete(null);
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Async task rejected, queue is full ({} pending)", asyncExecutor.getQueue().size());
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private static <T> void submitAsync(SchedulerLane lane, Supplier<T> supplier, CompletableFuture<T> future) {
+        if (future.isDone()) return;
+        try {
+            asyncExecutor.execute(() -> {
+                if (future.isDone()) return;
+                T result = null;
+                Throwable error = null;
+                try {
+                    result = supplier.get();
+                } catch (Throwable t) {
+                    error = t;
+                }
+                final T value = result;
+                final Throwable cause = error;
+                // 回到主线程完成
+                lane.submit(lane.newTask(lane.tasks().currentTick(), EnumTaskPriority.HIGH, () -> {
+                    if (cause == null) {
+                        future.complete(value);
+                    } else {
+                        future.completeExceptionally(cause);
+                    }
+                }));
+            });
+        } catch (RejectedExecutionException e) {
+            LOGGER.warn("Async task rejected, queue is full ({} pending)", asyncExecutor.getQueue().size());
+            future.completeExceptionally(e);
+        }
     }
 
     @SubscribeEvent
@@ -47,7 +281,7 @@ public final class BaniraScheduler {
         MinecraftServer server = BaniraCodex.serverInstance().key();
         if (server == null) return;
 
-        runTask(server.getTickCount(), serverTasks, serverExecutedCount);
+        serverLane.run(server.getTickCount());
     }
 
     @OnlyIn(Dist.CLIENT)
@@ -55,46 +289,53 @@ public final class BaniraScheduler {
     public static void onClientTick(TickEvent.ClientTickEvent event) {
         if (event.phase != TickEvent.Phase.END) return;
 
-        runTask(clientTicks.incrementAndGet(), clientTasks, clientExecutedCount);
+        clientLane.run(clientTicks.incrementAndGet());
     }
 
-    private static void runTask(long currentTick, PriorityBlockingQueue<ScheduledTask> scheduledTasks, AtomicLong executedCount) {
-        try {
-            while (true) {
-                ScheduledTask task = scheduledTasks.peek();
-                if (task == null) break;
-                if (task.executeTick() <= currentTick) {
-                    task = scheduledTasks.poll();
-                    if (task == null) break;
-                    try {
-                        task.runnable().run();
-                        executedCount.incrementAndGet();
-                    } catch (Throwable t) {
-                        LOGGER.warn("Scheduled task threw an exception", t);
-                    }
-                } else {
-                    break;
-                }
-            }
-        } catch (Throwable t) {
-            LOGGER.error("Failed while executing scheduled tasks", t);
-        }
+    // region 时间预算
+
+    /**
+     * 设置服务端每 tick 执行非关键任务的时间预算, 超出部分按原顺序顺延至下一 tick
+     *
+     * @param budgetNanos 纳秒, 小于等于 0 表示不限制
+     */
+    public static void setServerTickBudgetNanos(long budgetNanos) {
+        serverLane.tickBudgetNanos(budgetNanos);
+    }
+
+    public static long getServerTickBudgetNanos() {
+        return serverLane.tickBudgetNanos();
     }
 
+    /**
+     * 设置客户端每 tick 执行非关键任务的时间预算, 超出部分按原顺序顺延至下一 tick
+     *
+     * @param budgetNanos 纳秒, 小于等于 0 表示不限制
+     */
+    public static void setClientTickBudgetNanos(long budgetNanos) {
+        clientLane.tickBudgetNanos(budgetNanos);
+    }
+
+    public static long getClientTickBudgetNanos() {
+        return clientLane.tickBudgetNanos();
+    }
+
+    // endregion
+
     public static int getServerPendingTaskCount() {
-        return serverTasks.size();
+        return serverLane.tasks().size();
     }
 
     public static long getServerExecutedCount() {
-        return serverExecutedCount.get();
+        return serverLane.executedCount().get();
     }
 
     public static int getClientPendingTaskCount() {
-        return clientTasks.size();
+        return clientLane.tasks().size();
     }
 
     public static long getClientExecutedCount() {
-        return clientExecutedCount.get();
+        return clientLane.executedCount().get();
     }
 
     public static int getPendingTaskCount() {
@@ -105,9 +346,92 @@ public final class BaniraScheduler {
         return getServerExecutedCount() + getClientExecutedCount();
     }
 
+    /**
+     * 因超出时间预算而被延后的服务端任务次数
+     */
+    public static long getServerDeferredCount() {
+        return serverLane.deferredCount().get();
+    }
+
+    /**
+     * 因超出时间预算而被延后的客户端任务次数
+     */
+    public static long getClientDeferredCount() {
+        return clientLane.deferredCount().get();
+    }
+
+    /**
+     * 服务端任务平均等待 tick 数(实际执行 tick - 计划 tick)
+     */
+    public static double getServerAverageWaitTicks() {
+        return serverLane.averageWaitTicks();
+    }
+
+    public static long getServerMaxWaitTicks() {
+        return serverLane.waitTicksMax().get();
+    }
+
+    /**
+     * 客户端任务平均等待 tick 数(实际执行 tick - 计划 tick)
+     */
+    public static double getClientAverageWaitTicks() {
+        return clientLane.averageWaitTicks();
+    }
+
+    public static long getClientMaxWaitTicks() {
+        return clientLane.waitTicksMax().get();
+    }
+
+    /**
+     * 等待执行的异步任务数
+     */
+    public static int getAsyncPendingTaskCount() {
+        return asyncExecutor.getQueue().size();
+    }
+
+    public static int getAsyncActiveCount() {
+        return asyncExecutor.getActiveCount();
+    }
+
+    // region 执行统计
+
+    /**
+     * 按所有者获取服务端任务执行统计
+     */
+    public static Map<String, TaskStatistics> getServerStatistics() {
+        return Collections.unmodifiableMap(new HashMap<>(serverLane.ownerStatistics()));
+    }
+
+    /**
+     * 按所有者获取客户端任务执行统计
+     */
+    public static Map<String, TaskStatistics> getClientStatistics() {
+        return Collections.unmodifiableMap(new HashMap<>(clientLane.ownerStatistics()));
+    }
+
+    /**
+     * 获取指定所有者的服务端任务执行统计
+     */
+    public static TaskStatistics getServerStatistics(String owner) {
+        return serverLane.ownerStatistics().get(owner);
+    }
+
+    /**
+     * 清空所有执行统计
+     */
+    public static void resetStatistics() {
+        serverLane.ownerStatistics().clear();
+        clientLane.ownerStatistics().clear();
+    }
+
+    // endregion
+
+    /**
+     * 取消任务, 等同于 {@link ScheduledTask#cancel()}
+     */
     public static boolean removeTask(ScheduledTask task) {
         if (task == null) return false;
-        return serverTasks.remove(task);
+        return task.cancel();
     }
 
 }
@@ -10,6 +10,7 @@ import java.time.*;
 import java.time.format.DateTimeFormatter;
 import java.time.format.TextStyle;
 import java.time.temporal.ChronoUnit;
+import java.time.temporal.TemporalAdjusters;
 import java.util.*;
 import java.util.stream.Collectors;
 
@@ -483,6 +484,34 @@ public final class DateUtils {
         return calendar.getTime();
     }
 
+    /**
+     * 获取给定时间之后的下一个每日指定时刻
+     */
+    public static Date getNextDailyTime(Date current, int hour, int minute) {
+        LocalDateTime now = getLocalDateTime(current);
+        LocalDateTime next = now.toLocalDate().atTime(hour, minute);
+        if (!next.isAfter(now)) {
+            next = next.plusDays(1);
+        }
+        return getDate(next);
+    }
+
+    /**
+     * 获取给定时间之后的下一个每周指定时刻
+     *
+     * @param dayOfWeek 星期, 1-7 对应周一至周日
+     */
+    public static Date getNextWeeklyTime(Date current, int dayOfWeek, int hour, int minute) {
+        LocalDateTime now = getLocalDateTime(current);
+        LocalDateTime next = now.toLocalDate()
+                .with(TemporalAdjusters.nextOrSame(DayOfWeek.of(dayOfWeek)))
+                .atTime(hour, minute);
+        if (!next.isAfter(now)) {
+            next = next.plusWeeks(1);
+        }
+        return getDate(next);
+    }
+
     public static LocalDateTime getLocalDateTime(Date date) {
         if (date == null) {
             date = new Date();
@@ -1,15 +1,23 @@
 package xin.vanilla.banira.common.util;
 
+import io.netty.buffer.Unpooled;
 import lombok.Getter;
 import lombok.experimental.Accessors;
 import net.minecraft.entity.player.ServerPlayerEntity;
+import net.minecraft.network.IPacket;
+import net.minecraft.network.PacketBuffer;
+import net.minecraftforge.fml.network.NetworkDirection;
 import net.minecraftforge.fml.network.PacketDistributor;
 import net.minecraftforge.fml.network.simple.SimpleChannel;
+import xin.vanilla.banira.common.network.NetworkHandler;
+import xin.vanilla.banira.common.network.packet.FragmentPacket;
 import xin.vanilla.banira.common.network.packet.SplitPacket;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
 
 @Getter
 @Accessors(fluent = true)
@@ -19,8 +27,11 @@ public final class PacketUtils {
 
     /**
      * 分片网络包缓存
+     *
+     * @deprecated 分包已改为按连接重组, 见 {@link xin.vanilla.banira.common.network.ReassemblyBuffer}, 此缓存不再使用
      */
     @Getter
+    @Deprecated
     private static final Map<String, List<? extends SplitPacket>> packetCache = new ConcurrentHashMap<>();
 
 
@@ -32,12 +43,41 @@ public final class PacketUtils {
     }
 
     /**
-     * 发送数据包至玩家
+     * 立即发送数据包至玩家, 适用于需要即时送达的消息
      */
     public static <MSG> void sendPacketToPlayer(SimpleChannel channel, MSG msg, ServerPlayerEntity player) {
         channel.send(PacketDistributor.PLAYER.with(() -> player), msg);
     }
 
+    /**
+     * 排队发送数据包至玩家, 在本 tick 结束时与发往该玩家的其他排队消息合并发送
+     *
+     * @param handler 网络处理器
+     * @param msg     通过 {@link NetworkHandler#register} 等方法注册的消息
+     * @param player  目标玩家
+     * @see xin.vanilla.banira.common.network.PacketBatcher
+     */
+    public static <MSG> void queuePacketToPlayer(NetworkHandler handler, MSG msg, ServerPlayerEntity player) {
+        handler.getBatcher().queue(player, msg);
+    }
+
+    /**
+     * 排队发送数据包至所有玩家, 在本 tick 结束时与其他排队的广播消息合并发送
+     *
+     * @param handler 网络处理器
+     * @param msg     通过 {@link NetworkHandler#register} 等方法注册的消息
+     */
+    public static <MSG> void queuePacketToAll(NetworkHandler handler, MSG msg) {
+        handler.getBatcher().queueToAll(msg);
+    }
+
+    /**
+     * 立即发送网络处理器中所有排队的数据包
+     */
+    public static void flushQueuedPackets(NetworkHandler handler) {
+        handler.getBatcher().flush();
+    }
+
     /**
      * 发送分包数据包
      *
@@ -65,6 +105,54 @@ public final class PacketUtils {
         sendSplitPacket(channel, packet, PacketDistributor.PLAYER.with(() -> player));
     }
 
+    /**
+     * 向多个玩家广播分包数据包</br>
+     * 每个分包只编码一次, 编码结果封装为原版数据包后发往各玩家的连接; 原版自定义负载包在写出时复制负载,
+     * 同一数据包可安全地写入多个连接</br>
+     * 发往所有玩家时 {@link #sendSplitPacket} 配合 {@link PacketDistributor#ALL} 同样只编码一次
+     *
+     * @param channel 网络通道
+     * @param packet  要发送的数据包
+     * @param players 目标玩家
+     * @param <T>     分包类型
+     */
+    public static <T extends SplitPacket> void broadcastSplitPacket(SimpleChannel channel, T packet, Collection<ServerPlayerEntity> players) {
+        if (players.isEmpty()) return;
+        for (T splitPacket : packet.split()) {
+            broadcast(channel.toVanillaPacket(splitPacket, NetworkDirection.PLAY_TO_CLIENT), players);
+        }
+    }
+
+    /**
+     * 向多个玩家广播大消息, 整体序列化与每个分片的编码均只进行一次
+     *
+     * @param handler 网络处理器
+     * @param msg     通过 {@link NetworkHandler#registerLarge} 注册的消息
+     * @param players 目标玩家
+     */
+    public static <MSG> void broadcastLargePacket(NetworkHandler handler, MSG msg, Collection<ServerPlayerEntity> players) {
+        if (players.isEmpty()) return;
+        frame(handler, msg, fragment ->
+                broadcast(handler.getChannel().toVanillaPacket(fragment, NetworkDirection.PLAY_TO_CLIENT), players)
+        );
+    }
+
+    /**
+     * 向多个玩家广播数据包, 只编码一次
+     */
+    public static <MSG> void broadcastPacket(SimpleChannel channel, MSG msg, Collection<ServerPlayerEntity> players) {
+        if (players.isEmpty()) return;
+        broadcast(channel.toVanillaPacket(msg, NetworkDirection.PLAY_TO_CLIENT), players);
+    }
+
+    private static void broadcast(IPacket<?> packet, Collection<ServerPlayerEntity> players) {
+        for (ServerPlayerEntity player : players) {
+            if (player.connection != null) {
+                player.connection.send(packet);
+            }
+        }
+    }
+
     /**
      * 发送分包数据包至服务器
      *
@@ -78,4 +166,57 @@ public final class PacketUtils {
             channel.sendToServer(splitPacket);
         }
     }
+
+    /**
+     * 发送大消息, 消息需通过 {@link NetworkHandler#registerLarge} 注册
+     *
+     * @param handler 网络处理器
+     * @param msg     要发送的消息
+     * @param target  发送目标
+     */
+    public static <MSG> void sendLargePacket(NetworkHandler handler, MSG msg, PacketDistributor.PacketTarget target) {
+        frame(handler, msg, fragment -> handler.getChannel().send(target, fragment));
+    }
+
+    /**
+     * 发送大消息至玩家
+     */
+    public static <MSG> void sendLargePacketToPlayer(NetworkHandler handler, MSG msg, ServerPlayerEntity player) {
+        sendLargePacket(handler, msg, PacketDistributor.PLAYER.with(() -> player));
+    }
+
+    /**
+     * 发送大消息至服务器
+     */
+    public static <MSG> void sendLargePacketToServer(NetworkHandler handler, MSG msg) {
+        frame(handler, msg, fragment -> handler.getChannel().sendToServer(fragment));
+    }
+
+    /**
+     * 将消息整体序列化一次, 再按 {@link NetworkHandler#getFragmentSize()} 切分为共享同一缓冲区的分片依次交给发送方</br>
+     * 发送方需在回调返回前完成分片的编码
+     *
+     * @throws IllegalArgumentException 序列化后超过 {@link NetworkHandler#MAX_LARGE_MESSAGE_BYTES}
+     */
+    public static <MSG> void frame(NetworkHandler handler, MSG msg, Consumer<FragmentPacket> sender) {
+        int type = handler.getLargeMessageType(msg.getClass());
+        PacketBuffer payload = new PacketBuffer(Unpooled.buffer());
+        try {
+            handler.encodeLarge(type, msg, payload);
+            int length = payload.readableBytes();
+            if (length > NetworkHandler.MAX_LARGE_MESSAGE_BYTES) {
+                throw new IllegalArgumentException("Large message " + msg.getClass().getName() + " is too big: " + length + " bytes");
+            }
+            int size = handler.getFragmentSize();
+            int total = Math.max(1, (length + size - 1) / size);
+            long messageId = handler.nextMessageId();
+            for (int i = 0; i < total; i++) {
+                int offset = i * size;
+                sender.accept(new FragmentPacket(messageId, type, i, total
+                        , payload.slice(payload.readerIndex() + offset, Math.min(size, length - offset))));
+            }
+        } finally {
+            payload.release();
+        }
+    }
 }
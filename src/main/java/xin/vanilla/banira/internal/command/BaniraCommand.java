@@ -0,0 +1,274 @@
+package xin.vanilla.banira.internal.command;
+
+import com.mojang.brigadier.CommandDispatcher;
+import com.mojang.brigadier.arguments.BoolArgumentType;
+import com.mojang.brigadier.arguments.DoubleArgumentType;
+import com.mojang.brigadier.arguments.IntegerArgumentType;
+import com.mojang.brigadier.arguments.StringArgumentType;
+import com.mojang.brigadier.builder.LiteralArgumentBuilder;
+import net.minecraft.command.CommandSource;
+import net.minecraft.command.Commands;
+import xin.vanilla.banira.common.data.CallbackList;
+import xin.vanilla.banira.common.data.KeyValue;
+import xin.vanilla.banira.common.data.RollingHistogram;
+import xin.vanilla.banira.common.data.TaskStatistics;
+import xin.vanilla.banira.common.enums.EnumI18nType;
+import xin.vanilla.banira.common.network.InboundLimit;
+import xin.vanilla.banira.common.network.NetworkHandler;
+import xin.vanilla.banira.common.network.PacketBatcher;
+import xin.vanilla.banira.common.network.TrafficStatistics;
+import xin.vanilla.banira.common.util.BaniraEventBus;
+import xin.vanilla.banira.common.util.BaniraScheduler;
+import xin.vanilla.banira.common.util.CommandUtils;
+import xin.vanilla.banira.common.util.Component;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * 调试指令 /banira
+ */
+public final class BaniraCommand {
+    private BaniraCommand() {
+    }
+
+    public static final String ROOT = "banira";
+
+    public static void register(CommandDispatcher<CommandSource> dispatcher) {
+        LiteralArgumentBuilder<CommandSource> scheduler = Commands.literal("scheduler")
+                .then(Commands.literal("stats")
+                        .executes(context -> schedulerStats(context.getSource(), null))
+                        .then(Commands.argument("owner", StringArgumentType.word())
+                                .suggests((context, builder) -> {
+                                    BaniraScheduler.getServerStatistics().keySet().forEach(builder::suggest);
+                                    return builder.buildFuture();
+                                })
+                                .executes(context -> schedulerStats(context.getSource(), StringArgumentType.getString(context, "owner")))
+                        )
+                )
+                .then(Commands.literal("reset")
+                        .executes(context -> {
+                            BaniraScheduler.resetStatistics();
+                            sendLine(context.getSource(), "debug_scheduler_reset");
+                            return 1;
+                        })
+                );
+
+        LiteralArgumentBuilder<CommandSource> eventBus = Commands.literal("eventbus")
+                .then(Commands.literal("profile")
+                        .executes(context -> {
+                            sendLine(context.getSource(), "debug_eventbus_profile"
+                                    , enabled(BaniraEventBus.isProfiling()), String.format("%.3fms", BaniraEventBus.getSlowListenerThreshold()));
+                            return 1;
+                        })
+                        .then(Commands.argument("enabled", BoolArgumentType.bool())
+                                .executes(context -> {
+                                    boolean enabled = BoolArgumentType.getBool(context, "enabled");
+                                    BaniraEventBus.setProfiling(enabled);
+                                    sendLine(context.getSource(), "debug_eventbus_profile_set", enabled(enabled));
+                                    return 1;
+                                })
+                        )
+                )
+                .then(Commands.literal("threshold")
+                        .then(Commands.argument("millis", DoubleArgumentType.doubleArg(0))
+                                .executes(context -> {
+                                    double millis = DoubleArgumentType.getDouble(context, "millis");
+                                    BaniraEventBus.setSlowListenerThreshold(millis);
+                                    sendLine(context.getSource(), "debug_eventbus_threshold", String.format("%.3fms", millis));
+                                    return 1;
+                                })
+                        )
+                )
+                .then(Commands.literal("top")
+                        .executes(context -> eventBusTop(context.getSource(), 10))
+                        .then(Commands.argument("count", IntegerArgumentType.integer(1, 100))
+                                .executes(context -> eventBusTop(context.getSource(), IntegerArgumentType.getInteger(context, "count")))
+                        )
+                )
+                .then(Commands.literal("reset")
+                        .executes(context -> {
+                            BaniraEventBus.resetProfiling();
+                            sendLine(context.getSource(), "debug_eventbus_reset");
+                            return 1;
+                        })
+                );
+
+        LiteralArgumentBuilder<CommandSource> network = Commands.literal("network")
+                .then(Commands.literal("traffic")
+                        .executes(context -> networkTraffic(context.getSource(), 10))
+                        .then(Commands.argument("count", IntegerArgumentType.integer(1, 100))
+                                .executes(context -> networkTraffic(context.getSource(), IntegerArgumentType.getInteger(context, "count")))
+                        )
+                )
+                .then(Commands.literal("limits")
+                        .executes(context -> networkLimits(context.getSource()))
+                )
+                .then(Commands.literal("reset")
+                        .executes(context -> {
+                            for (NetworkHandler handler : NetworkHandler.getHandlers()) {
+                                handler.resetTraffic();
+                                handler.getBatcher().resetStatistics();
+                                handler.getLimits().forEach(InboundLimit::resetStatistics);
+                            }
+                            sendLine(context.getSource(), "debug_network_reset");
+                            return 1;
+                        })
+                );
+
+        dispatcher.register(Commands.literal(ROOT)
+                .requires(source -> source.hasPermission(2))
+                .then(scheduler)
+                .then(eventBus)
+                .then(network)
+        );
+    }
+
+    private static int schedulerStats(CommandSource source, String owner) {
+        sendLine(source, "debug_scheduler_summary"
+                , BaniraScheduler.getServerPendingTaskCount()
+                , BaniraScheduler.getServerExecutedCount()
+                , BaniraScheduler.getServerDeferredCount()
+                , String.format("%.2f", BaniraScheduler.getServerAverageWaitTicks())
+                , BaniraScheduler.getServerMaxWaitTicks()
+                , BaniraScheduler.getAsyncPendingTaskCount()
+        );
+        List<TaskStatistics> statistics = BaniraScheduler.getServerStatistics().values().stream()
+                .filter(o -> owner == null || o.owner().equals(owner))
+                .sorted(Comparator.comparingLong((TaskStatistics o) -> o.runNanos().sum()).reversed())
+                .collect(Collectors.toList());
+        if (statistics.isEmpty()) {
+            sendLine(source, "debug_scheduler_empty");
+            return 0;
+        }
+        for (TaskStatistics o : statistics) {
+            sendLine(source, "debug_scheduler_owner"
+                    , o.owner()
+                    , o.runNanos().count()
+                    , formatNanos(o.runNanos().sum())
+                    , formatNanos((long) o.runNanos().mean())
+                    , formatNanos(o.runNanos().percentile(0.5))
+                    , formatNanos(o.runNanos().percentile(0.99))
+                    , formatNanos(o.runNanos().max())
+                    , o.lateTicks().percentile(0.99)
+                    , o.lateTicks().max()
+                    , o.exceptions().get()
+                    , o.slowestLabel()
+                    , formatNanos(o.slowestNanos())
+            );
+        }
+        return statistics.size();
+    }
+
+    private static int eventBusTop(CommandSource source, int count) {
+        if (!BaniraEventBus.isProfiling()) {
+            sendLine(source, "debug_eventbus_profiling_off", "/" + ROOT + " eventbus profile true");
+        }
+        List<CallbackList.Listener<?>> listeners = BaniraEventBus.getTopListeners(count);
+        if (listeners.isEmpty()) {
+            sendLine(source, "debug_eventbus_empty");
+            return 0;
+        }
+        for (CallbackList.Listener<?> listener : listeners) {
+            RollingHistogram timings = listener.timings();
+            sendLine(source, "debug_eventbus_listener"
+                    , listener.isRegistered() ? listener.name() : Component.translatable(EnumI18nType.MESSAGE, "debug_eventbus_unregistered", listener.name())
+                    , listener.owner().getEventName()
+                    , timings.total().count()
+                    , formatNanos(timings.total().sum())
+                    , formatNanos((long) timings.total().mean())
+                    , formatNanos(timings.total().max())
+                    , formatNanos(timings.recentPercentile(0.5))
+                    , formatNanos(timings.recentPercentile(0.99))
+                    , listener.slowCalls().sum()
+            );
+        }
+        return listeners.size();
+    }
+
+    private static int networkTraffic(CommandSource source, int count) {
+        List<KeyValue<NetworkHandler, TrafficStatistics>> traffic = NetworkHandler.getHandlers().stream()
+                .flatMap(handler -> handler.getTraffic().stream().map(o -> new KeyValue<>(handler, o)))
+                .filter(o -> o.val().bytes().total().count() > 0)
+                .sorted(Comparator.comparingLong((KeyValue<NetworkHandler, TrafficStatistics> o) -> o.val().bytes().total().sum()).reversed())
+                .limit(count)
+                .collect(Collectors.toList());
+        if (traffic.isEmpty()) {
+            sendLine(source, "debug_network_empty");
+            return 0;
+        }
+        for (KeyValue<NetworkHandler, TrafficStatistics> entry : traffic) {
+            TrafficStatistics o = entry.val();
+            Component line = Component.translatable(EnumI18nType.MESSAGE, "debug_network_traffic"
+                    , entry.key().getName()
+                    , Component.translatable(EnumI18nType.WORD, o.inbound() ? "inbound" : "outbound")
+                    , o.packetClass().getSimpleName()
+                    , o.bytes().total().count()
+                    , o.bytes().recentCount()
+                    , o.bytes().total().sum()
+                    , String.format("%.0f", o.bytes().total().mean())
+                    , o.bytes().total().max()
+                    , Component.translatable(EnumI18nType.WORD, o.inbound() ? "decode" : "encode")
+                    , formatNanos((long) o.nanos().total().mean())
+                    , formatNanos(o.nanos().recentPercentile(0.99))
+            );
+            if (o.fragments().total().count() > 0) {
+                line.append(Component.translatable(EnumI18nType.MESSAGE, "debug_network_fragments"
+                        , String.format("%.1f", o.fragments().total().mean())
+                        , formatNanos((long) o.reassemblyNanos().total().mean())
+                        , formatNanos(o.reassemblyNanos().recentPercentile(0.99))
+                ));
+            }
+            sendLine(source, line);
+        }
+        return traffic.size();
+    }
+
+    private static int networkLimits(CommandSource source) {
+        int lines = 0;
+        for (NetworkHandler handler : NetworkHandler.getHandlers()) {
+            PacketBatcher batcher = handler.getBatcher();
+            sendLine(source, "debug_network_batching"
+                    , handler.getName()
+                    , batcher.getQueuedMessages()
+                    , batcher.getBundles()
+                    , String.format("%.1f", batcher.getBundleSizes().mean())
+                    , batcher.getBundleBytes().max()
+                    , batcher.getDirectMessages()
+                    , batcher.getSavedWrites()
+            );
+            lines++;
+            for (InboundLimit<?> limit : handler.getLimits()) {
+                sendLine(source, "debug_network_limit"
+                        , handler.getName()
+                        , limit.packetClass().getSimpleName()
+                        , String.format("%.1f", limit.capacity())
+                        , String.format("%.1f", limit.refillPerSecond())
+                        , limit.action()
+                        , limit.getAccepted()
+                        , limit.getDelayed()
+                        , limit.getDropped()
+                );
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    static String formatNanos(long nanos) {
+        return String.format("%.3fms", nanos / 1_000_000.0);
+    }
+
+    static Component enabled(boolean enabled) {
+        return Component.translatable(EnumI18nType.WORD, enabled ? "enabled" : "disabled");
+    }
+
+    static void sendLine(CommandSource source, String key, Object... args) {
+        sendLine(source, Component.translatable(EnumI18nType.MESSAGE, key, args));
+    }
+
+    static void sendLine(CommandSource source, Component line) {
+        source.sendSuccess(line.toChatComponent(CommandUtils.getLanguage(source)), false);
+    }
+}
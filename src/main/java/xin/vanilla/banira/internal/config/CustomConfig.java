@@ -7,6 +7,7 @@ import net.minecraftforge.fml.loading.FMLPaths;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import xin.vanilla.banira.BaniraCodex;
+import xin.vanilla.banira.common.util.BaniraScheduler;
 import xin.vanilla.banira.common.util.JsonUtils;
 
 import java.io.File;
@@ -19,7 +20,7 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 @SuppressWarnings("unused")
@@ -39,6 +40,20 @@ public class CustomConfig {
     @Setter
     private static boolean dirty = false;
 
+    /**
+     * 配置写入线程, 单线程按提交顺序写入, 队列无界不会拒绝保存请求
+     */
+    private static final ExecutorService SAVE_EXECUTOR = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "BaniraCodex-Config-IO");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 最近一次提交的保存任务
+     */
+    private static volatile CompletableFuture<Void> lastSave = CompletableFuture.completedFuture(null);
+
     private static JsonObject defaultConfig() {
         JsonObject config = new JsonObject();
 
@@ -49,6 +64,10 @@ public class CustomConfig {
         JsonUtils.setInt(server, "virtual_op_permission", 4);
         JsonUtils.setString(server, "default_language", "en_us");
         JsonUtils.setJsonObject(config, "server", server);
+        JsonObject scheduler = new JsonObject();
+        JsonUtils.setLong(scheduler, "server_tick_budget_micros", 0);
+        JsonUtils.setLong(scheduler, "client_tick_budget_micros", 0);
+        JsonUtils.setJsonObject(config, "scheduler", scheduler);
 
         return config;
     }
@@ -85,58 +104,88 @@ public class CustomConfig {
             customConfig = defaultConfig();
             setDirty(true);
         }
+        applySchedulerBudget();
+    }
+
+    /**
+     * 将配置中的时间预算应用到计划任务调度器
+     */
+    private static void applySchedulerBudget() {
+        BaniraScheduler.setServerTickBudgetNanos(TimeUnit.MICROSECONDS.toNanos(getServerTickBudgetMicros()));
+        BaniraScheduler.setClientTickBudgetNanos(TimeUnit.MICROSECONDS.toNanos(getClientTickBudgetMicros()));
     }
 
     /**
      * 保存 JSON 数据
      */
-    public static void saveCustomConfig() {
+    public static synchronized void saveCustomConfig() {
+        lastSave = CompletableFuture.runAsync(CustomConfig::writeCustomConfig, SAVE_EXECUTOR);
+    }
+
+    /**
+     * 等待已提交的保存任务写入完成
+     *
+     * @return 是否在超时前完成
+     */
+    public static boolean flushCustomConfig(long timeout, TimeUnit unit) {
+        try {
+            lastSave.get(timeout, unit);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        }
+    }
+
+    private static void writeCustomConfig() {
         long timeout = 10;
-        new Thread(() -> {
-            if (!isDirty()) return;
-            File dir = getConfigDirectory().toFile();
-            if (!dir.exists()) {
-                dir.mkdirs();
-            }
-            File file = new File(dir, FILE_NAME);
-            try (RandomAccessFile accessFile = new RandomAccessFile(file, "rw");
-                 FileChannel channel = accessFile.getChannel()) {
-                FileLock lock = null;
-                long startTime = System.currentTimeMillis();
-                while (lock == null) {
-                    try {
-                        lock = channel.tryLock();
-                    } catch (Exception e) {
-                        if (System.currentTimeMillis() - startTime > TimeUnit.SECONDS.toMillis(timeout)) {
-                            throw new RuntimeException("Failed to acquire file lock within timeout.", e);
-                        }
-                        Thread.sleep(100);
-                    }
-                    if (!isDirty()) {
-                        return;
-                    }
-                }
+        if (!isDirty()) return;
+        File dir = getConfigDirectory().toFile();
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        File file = new File(dir, FILE_NAME);
+        try (RandomAccessFile accessFile = new RandomAccessFile(file, "rw");
+             FileChannel channel = accessFile.getChannel()) {
+            FileLock lock = null;
+            long startTime = System.currentTimeMillis();
+            while (lock == null) {
                 try {
-                    // 清空旧内容
-                    accessFile.setLength(0);
-                    accessFile.write(JsonUtils.PRETTY_GSON.toJson(customConfig).getBytes(StandardCharsets.UTF_8));
-                    setDirty(false);
-                    LOGGER.debug("Saved custom common config.");
+                    lock = channel.tryLock();
                 } catch (Exception e) {
-                    LOGGER.error("Error saving custom common config: ", e);
-                } finally {
-                    if (lock.isValid()) {
-                        try {
-                            lock.release();
-                        } catch (IOException e) {
-                            LOGGER.warn("Failed to release file lock: ", e);
-                        }
+                    if (System.currentTimeMillis() - startTime > TimeUnit.SECONDS.toMillis(timeout)) {
+                        throw new RuntimeException("Failed to acquire file lock within timeout.", e);
                     }
+                    Thread.sleep(100);
+                }
+                if (!isDirty()) {
+                    return;
                 }
+            }
+            try {
+                // 清空旧内容
+                accessFile.setLength(0);
+                accessFile.write(JsonUtils.PRETTY_GSON.toJson(customConfig).getBytes(StandardCharsets.UTF_8));
+                setDirty(false);
+                LOGGER.debug("Saved custom common config.");
             } catch (Exception e) {
-                LOGGER.error("Error saving custom common config (outer): ", e);
+                LOGGER.error("Error saving custom common config: ", e);
+            } finally {
+                if (lock.isValid()) {
+                    try {
+                        lock.release();
+                    } catch (IOException e) {
+                        LOGGER.warn("Failed to release file lock: ", e);
+                    }
+                }
             }
-        }).start();
+        } catch (Exception e) {
+            LOGGER.error("Error saving custom common config (outer): ", e);
+        }
     }
 
     public static int getHelpNumPerPage() {
@@ -177,6 +226,32 @@ public class CustomConfig {
         setDirty(true);
     }
 
+    /**
+     * 服务端计划任务每 tick 的时间预算(微秒), 小于等于 0 表示不限制
+     */
+    public static long getServerTickBudgetMicros() {
+        return JsonUtils.getLong(customConfig, "scheduler.server_tick_budget_micros", 0);
+    }
+
+    public static void setServerTickBudgetMicros(long micros) {
+        JsonUtils.setLong(customConfig, "scheduler.server_tick_budget_micros", micros);
+        BaniraScheduler.setServerTickBudgetNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+        setDirty(true);
+    }
+
+    /**
+     * 客户端计划任务每 tick 的时间预算(微秒), 小于等于 0 表示不限制
+     */
+    public static long getClientTickBudgetMicros() {
+        return JsonUtils.getLong(customConfig, "scheduler.client_tick_budget_micros", 0);
+    }
+
+    public static void setClientTickBudgetMicros(long micros) {
+        JsonUtils.setLong(customConfig, "scheduler.client_tick_budget_micros", micros);
+        BaniraScheduler.setClientTickBudgetNanos(TimeUnit.MICROSECONDS.toNanos(micros));
+        setDirty(true);
+    }
+
     public static JsonObject getVirtualPermission() {
         return JsonUtils.getJsonObject(customConfig, "server.virtual_permission", new JsonObject());
     }
@@ -2,14 +2,18 @@ package xin.vanilla.banira.internal.event;
 
 import net.minecraftforge.api.distmarker.Dist;
 import net.minecraftforge.api.distmarker.OnlyIn;
+import net.minecraftforge.client.event.ClientPlayerNetworkEvent;
 import net.minecraftforge.client.event.GuiOpenEvent;
 import net.minecraftforge.client.event.TextureStitchEvent;
+import net.minecraftforge.event.RegisterCommandsEvent;
 import net.minecraftforge.eventbus.api.SubscribeEvent;
 import net.minecraftforge.fml.common.Mod;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import xin.vanilla.banira.BaniraCodex;
+import xin.vanilla.banira.common.network.NetworkHandler;
 import xin.vanilla.banira.common.util.BaniraEventBus;
+import xin.vanilla.banira.internal.command.BaniraCommand;
 
 /**
  * Game事件处理器
@@ -18,6 +22,11 @@ import xin.vanilla.banira.common.util.BaniraEventBus;
 public class GameEventHandler {
     private static final Logger LOGGER = LogManager.getLogger();
 
+    @SubscribeEvent
+    public static void onRegisterCommands(RegisterCommandsEvent event) {
+        BaniraCommand.register(event.getDispatcher());
+    }
+
     @OnlyIn(Dist.CLIENT)
     @SubscribeEvent
     public static void onGuiOpen(GuiOpenEvent event) {
@@ -32,4 +41,10 @@ public class GameEventHandler {
         }
     }
 
+    @OnlyIn(Dist.CLIENT)
+    @SubscribeEvent
+    public static void onClientLoggedOut(ClientPlayerNetworkEvent.LoggedOutEvent event) {
+        NetworkHandler.getHandlers().forEach(NetworkHandler::cancelRequests);
+    }
+
 }
@@ -2,38 +2,59 @@ package xin.vanilla.banira.internal.network;
 
 import xin.vanilla.banira.BaniraCodex;
 import xin.vanilla.banira.common.network.NetworkHandler;
+import xin.vanilla.banira.common.network.PayloadCompressor;
+import xin.vanilla.banira.common.network.RequestType;
 import xin.vanilla.banira.common.network.packet.RequestToBoth;
 import xin.vanilla.banira.common.util.AdvancementUtils;
 import xin.vanilla.banira.common.util.PacketUtils;
+import xin.vanilla.banira.internal.network.packet.AdvancementHashToServer;
 import xin.vanilla.banira.internal.network.packet.AdvancementToClient;
 
 public final class NetworkInit {
     public static final NetworkHandler HANDLER = NetworkHandler.create("main_network", BaniraCodex.resourceFactory());
 
     /**
-     * RequestToBoth 请求进度数据
+     * RequestToBoth 请求全量进度数据
+     *
+     * @deprecated 使用 {@link #ADVANCEMENT_SYNC} 携带缓存摘要请求
      */
+    @Deprecated
     public static final int REQUEST_ADVANCEMENT_DATA = 1;
+    /**
+     * 携带缓存摘要请求进度数据
+     */
+    public static final int REQUEST_ADVANCEMENT_SYNC = 2;
+
+    /**
+     * 进度数据同步请求, 每个玩家每秒最多 2 次
+     */
+    public static final RequestType<AdvancementHashToServer, AdvancementToClient> ADVANCEMENT_SYNC = HANDLER.registerRequest(
+            REQUEST_ADVANCEMENT_SYNC,
+            AdvancementHashToServer::toBytes,
+            AdvancementHashToServer::new,
+            AdvancementToClient::toBytes,
+            AdvancementToClient::new,
+            (request, player) -> AdvancementToClient.reply(AdvancementUtils.advancementDigest(), request)
+    ).rateLimit(2);
 
     public static void register() {
-        HANDLER.registerSplit(
+        HANDLER.registerLarge(
                 AdvancementToClient.class,
                 AdvancementToClient::toBytes,
                 AdvancementToClient::new,
-                AdvancementToClient::handle
-        );
-
-        HANDLER.register(
-                RequestToBoth.class,
-                RequestToBoth::toBytes,
-                RequestToBoth::new,
-                RequestToBoth::handle
+                AdvancementToClient::handle,
+                new PayloadCompressor()
         );
 
         // 注册服务端进度数据请求处理器
         RequestToBoth.registerHandler(REQUEST_ADVANCEMENT_DATA, (packet, player) -> {
-            PacketUtils.sendSplitPacketToPlayer(HANDLER.getChannel(), new AdvancementToClient(AdvancementUtils.advancementData()), player);
+            PacketUtils.sendLargePacketToPlayer(HANDLER, AdvancementToClient.full(AdvancementUtils.advancementDigest()), player);
         });
 
+        // 每个玩家每秒 5 个简单请求, 全量进度请求的开销按 20 计, 即平均每 4 秒 1 次;
+        // 携带请求ID的类型化请求不计入, 由 RequestType#rateLimit 限制并回复被限流, 以免客户端只能等到超时
+        HANDLER.limit(RequestToBoth.class, 20, 5)
+                .cost(packet -> packet.getRequestId() != 0 ? 0 : packet.getRequestType() == REQUEST_ADVANCEMENT_DATA ? 20 : 1);
+
     }
 }
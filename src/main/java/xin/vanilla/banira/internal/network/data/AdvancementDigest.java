@@ -0,0 +1,142 @@
+package xin.vanilla.banira.internal.network.data;
+
+import io.netty.buffer.Unpooled;
+import lombok.Getter;
+import lombok.experimental.Accessors;
+import net.minecraft.network.PacketBuffer;
+
+import java.util.*;
+
+/**
+ * 进度集合摘要</br>
+ * 按注册ID排序保存进度及其序列化内容的 64 位哈希, 集合哈希与顺序无关, 用于客户端与服务端比对差异
+ */
+@Getter
+@Accessors(fluent = true)
+public final class AdvancementDigest {
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    public static final AdvancementDigest EMPTY = new AdvancementDigest(new ArrayList<>(), new long[0]);
+
+    /**
+     * 按注册ID排序的进度
+     */
+    private final List<AdvancementData> advancements;
+    /**
+     * 与 {@link #advancements} 一一对应的内容哈希
+     */
+    private final long[] hashes;
+    /**
+     * 集合哈希
+     */
+    private final long setHash;
+
+    private AdvancementDigest(List<AdvancementData> advancements, long[] hashes) {
+        this.advancements = Collections.unmodifiableList(advancements);
+        this.hashes = hashes;
+        this.setHash = setHash(hashes);
+    }
+
+    /**
+     * 计算进度集合的摘要
+     */
+    public static AdvancementDigest of(Collection<AdvancementData> advancements) {
+        if (advancements == null || advancements.isEmpty()) return EMPTY;
+        List<AdvancementData> sorted = new ArrayList<>(advancements);
+        sorted.sort(Comparator.comparing(data -> data.id().toString()));
+        long[] hashes = new long[sorted.size()];
+        PacketBuffer buf = new PacketBuffer(Unpooled.buffer());
+        try {
+            for (int i = 0; i < hashes.length; i++) {
+                buf.clear();
+                sorted.get(i).writeToBuffer(buf);
+                hashes[i] = hash(buf);
+            }
+        } finally {
+            buf.release();
+        }
+        return new AdvancementDigest(sorted, hashes);
+    }
+
+    /**
+     * 计算集合哈希, 与顺序无关
+     */
+    public static long setHash(long[] hashes) {
+        long result = hashes.length;
+        for (long hash : hashes) {
+            result += mix(hash);
+        }
+        return result;
+    }
+
+    public int size() {
+        return hashes.length;
+    }
+
+    public boolean isEmpty() {
+        return hashes.length == 0;
+    }
+
+    /**
+     * 以内容哈希为键的进度映射
+     */
+    public Map<Long, AdvancementData> byHash() {
+        Map<Long, AdvancementData> map = new HashMap<>(hashes.length * 2);
+        for (int i = 0; i < hashes.length; i++) {
+            map.put(hashes[i], advancements.get(i));
+        }
+        return map;
+    }
+
+    /**
+     * 获取本集合中不存在于指定哈希集合中的进度
+     */
+    public List<AdvancementData> missingFrom(Set<Long> hashes) {
+        List<AdvancementData> result = new ArrayList<>();
+        for (int i = 0; i < this.hashes.length; i++) {
+            if (!hashes.contains(this.hashes[i])) {
+                result.add(advancements.get(i));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 获取指定哈希中不存在于本集合中的部分
+     */
+    public long[] absentOf(long[] hashes) {
+        Set<Long> own = hashSet();
+        return Arrays.stream(hashes).filter(hash -> !own.contains(hash)).toArray();
+    }
+
+    public Set<Long> hashSet() {
+        return toSet(hashes);
+    }
+
+    public static Set<Long> toSet(long[] hashes) {
+        Set<Long> set = new HashSet<>(hashes.length * 2);
+        for (long hash : hashes) {
+            set.add(hash);
+        }
+        return set;
+    }
+
+    private static long hash(PacketBuffer buf) {
+        long hash = FNV_OFFSET;
+        for (int i = buf.readerIndex(), end = buf.writerIndex(); i < end; i++) {
+            hash ^= buf.getByte(i) & 0xff;
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * SplitMix64 终结函数, 使求和后的集合哈希分布均匀
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
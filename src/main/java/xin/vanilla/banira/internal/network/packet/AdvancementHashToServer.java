@@ -0,0 +1,48 @@
+package xin.vanilla.banira.internal.network.packet;
+
+import lombok.Getter;
+import net.minecraft.network.PacketBuffer;
+import xin.vanilla.banira.internal.network.data.AdvancementDigest;
+
+
+/**
+ * 进度数据摘要, 客户端携带本地缓存的进度哈希通过 {@link xin.vanilla.banira.internal.network.NetworkInit#ADVANCEMENT_SYNC} 请求同步
+ */
+@Getter
+public class AdvancementHashToServer {
+    /**
+     * 本地缓存的集合哈希, 无缓存时为 {@link AdvancementDigest#EMPTY} 的集合哈希
+     */
+    private final long setHash;
+    /**
+     * 本地缓存中每个进度的内容哈希
+     */
+    private final long[] hashes;
+
+    public AdvancementHashToServer(AdvancementDigest digest) {
+        this.setHash = digest.setHash();
+        this.hashes = digest.hashes();
+    }
+
+    public AdvancementHashToServer(PacketBuffer buf) {
+        this.setHash = buf.readLong();
+        int size = buf.readVarInt();
+        // 每个哈希占 8 字节, 长度不可能超过剩余字节数
+        if (size < 0 || size > buf.readableBytes() / 8) {
+            throw new IllegalArgumentException("Invalid advancement hash count: " + size);
+        }
+        this.hashes = new long[size];
+        for (int i = 0; i < size; i++) {
+            this.hashes[i] = buf.readLong();
+        }
+    }
+
+    public void toBytes(PacketBuffer buf) {
+        buf.writeLong(this.setHash);
+        buf.writeVarInt(this.hashes.length);
+        for (long hash : this.hashes) {
+            buf.writeLong(hash);
+        }
+    }
+
+}
@@ -4,29 +4,69 @@ import lombok.Getter;
 import net.minecraft.network.PacketBuffer;
 import net.minecraftforge.fml.network.NetworkEvent;
 import xin.vanilla.banira.common.data.ArraySet;
-import xin.vanilla.banira.common.network.packet.SplitPacket;
 import xin.vanilla.banira.common.util.AdvancementUtils;
 import xin.vanilla.banira.internal.network.data.AdvancementData;
+import xin.vanilla.banira.internal.network.data.AdvancementDigest;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.function.Supplier;
-import java.util.stream.Collectors;
 
 
+/**
+ * 进度数据同步包, 以大消息方式按字节分片发送</br>
+ * 根据客户端缓存的摘要回复未变化、增量或全量数据
+ */
 @Getter
-public class AdvancementToClient extends SplitPacket
-        implements SplitPacket.MergeableSplitPacket<AdvancementToClient>,
-        SplitPacket.SplittableSplitPacket<AdvancementToClient> {
+public class AdvancementToClient {
+    /**
+     * 全量数据
+     */
+    public static final int MODE_FULL = 0;
+    /**
+     * 客户端缓存与服务端一致
+     */
+    public static final int MODE_UNCHANGED = 1;
+    /**
+     * 相对客户端缓存的增量数据
+     */
+    public static final int MODE_DELTA = 2;
+
+    private final int mode;
+    /**
+     * 服务端进度的集合哈希
+     */
+    private final long setHash;
+    /**
+     * 增量模式下需从客户端缓存中移除的进度内容哈希
+     */
+    private final long[] removed;
+    /**
+     * 全量模式下为全部进度, 增量模式下为新增或变化的进度
+     */
     private final ArraySet<AdvancementData> advancements;
 
     public AdvancementToClient(ArraySet<AdvancementData> advancements) {
-        super();
+        this(MODE_FULL, AdvancementDigest.of(advancements).setHash(), new long[0], advancements);
+    }
+
+    public AdvancementToClient(int mode, long setHash, long[] removed, ArraySet<AdvancementData> advancements) {
+        this.mode = mode;
+        this.setHash = setHash;
+        this.removed = removed;
         this.advancements = advancements;
     }
 
     public AdvancementToClient(PacketBuffer buf) {
-        super(buf);
+        this.mode = buf.readByte();
+        this.setHash = buf.readLong();
+        int removedSize = buf.readVarInt();
+        if (removedSize < 0 || removedSize > buf.readableBytes() / 8) {
+            throw new IllegalArgumentException("Invalid removed advancement count: " + removedSize);
+        }
+        this.removed = new long[removedSize];
+        for (int i = 0; i < removedSize; i++) {
+            this.removed[i] = buf.readLong();
+        }
         int size = buf.readVarInt();
         ArraySet<AdvancementData> advancements = new ArraySet<>();
         for (int i = 0; i < size; i++) {
@@ -35,60 +75,52 @@ public class AdvancementToClient extends SplitPacket
         this.advancements = advancements;
     }
 
-    private AdvancementToClient(List<AdvancementToClient> packets) {
-        super();
-        this.advancements = new ArraySet<>();
-        this.advancements.addAll(packets.stream().flatMap(packet -> packet.getAdvancements().stream()).collect(Collectors.toList()));
-    }
-
     /**
-     * 处理数据包
+     * 根据客户端摘要生成回复
+     *
+     * @param server  服务端进度摘要
+     * @param request 客户端摘要
      */
-    public static void handle(AdvancementToClient packet, Supplier<NetworkEvent.Context> ctx) {
-        ctx.get().enqueueWork(() -> {
-            if (ctx.get().getDirection().getReceptionSide().isClient()) {
-                AdvancementUtils.advancementData(packet.getAdvancements());
+    public static AdvancementToClient reply(AdvancementDigest server, AdvancementHashToServer request) {
+        if (request.getHashes().length > 0 && request.getSetHash() == server.setHash()) {
+            return new AdvancementToClient(MODE_UNCHANGED, server.setHash(), new long[0], new ArraySet<>());
+        }
+        if (request.getHashes().length > 0) {
+            List<AdvancementData> changed = server.missingFrom(AdvancementDigest.toSet(request.getHashes()));
+            // 变化超过一半时增量已无意义
+            if (changed.size() * 2 <= server.size()) {
+                return new AdvancementToClient(MODE_DELTA, server.setHash(), server.absentOf(request.getHashes()), new ArraySet<>(changed));
             }
-        });
-        ctx.get().setPacketHandled(true);
-    }
-
-    @Override
-    public int getChunkSize() {
-        return 1024;
+        }
+        return full(server);
     }
 
     /**
-     * 合并多个分包
+     * 全量数据
      */
-    @Override
-    public AdvancementToClient mergePackets(List<AdvancementToClient> packets) {
-        return new AdvancementToClient(packets);
+    public static AdvancementToClient full(AdvancementDigest server) {
+        return new AdvancementToClient(MODE_FULL, server.setHash(), new long[0], new ArraySet<>(server.advancements()));
     }
 
     /**
-     * 将数据包拆分为多个小包
+     * 处理数据包
      */
-    @Override
-    public List<AdvancementToClient> splitPacket() {
-        List<AdvancementToClient> result = new ArrayList<>();
-        for (int i = 0, index = 0; i < advancements.size() / getChunkSize() + 1; i++) {
-            AdvancementToClient packet = new AdvancementToClient(new ArraySet<>());
-            for (int j = 0; j < getChunkSize(); j++) {
-                if (index >= advancements.size()) break;
-                packet.advancements.add(this.advancements.get(index));
-                index++;
+    public static void handle(AdvancementToClient packet, Supplier<NetworkEvent.Context> ctx) {
+        ctx.get().enqueueWork(() -> {
+            if (ctx.get().getDirection().getReceptionSide().isClient()) {
+                AdvancementUtils.applyAdvancementSync(packet);
             }
-            packet.setId(this.getId());
-            packet.setSort(i);
-            result.add(packet);
-        }
-        result.forEach(packet -> packet.setTotal(result.size()));
-        return result;
+        });
+        ctx.get().setPacketHandled(true);
     }
 
     public void toBytes(PacketBuffer buf) {
-        super.toBytes(buf);
+        buf.writeByte(this.mode);
+        buf.writeLong(this.setHash);
+        buf.writeVarInt(this.removed.length);
+        for (long hash : this.removed) {
+            buf.writeLong(hash);
+        }
         buf.writeVarInt(this.advancements.size());
         for (AdvancementData data : this.advancements) {
             data.writeToBuffer(buf);
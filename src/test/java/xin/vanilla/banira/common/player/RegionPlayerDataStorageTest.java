@@ -0,0 +1,167 @@
+package xin.vanilla.banira.common.player;
+
+import net.minecraft.nbt.CompoundNBT;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RegionPlayerDataStorageTest {
+    private static final int RECORD_MAGIC = 0x42445231;
+    private static final int HEADER_SIZE = 28;
+
+    private static final UUID PLAYER_A = new UUID(1, 1);
+    private static final UUID PLAYER_B = new UUID(2, 2);
+    private static final UUID PLAYER_C = new UUID(3, 3);
+
+    @TempDir
+    Path dir;
+
+    /**
+     * 单区域, 记录依次追加, 小数据每条占一个扇区
+     */
+    private RegionPlayerDataStorage open() {
+        return new RegionPlayerDataStorage(() -> dir, 1);
+    }
+
+    private Path data() {
+        return dir.resolve("r.0.dat");
+    }
+
+    private static CompoundNBT tag(String value) {
+        CompoundNBT tag = new CompoundNBT();
+        tag.putString("value", value);
+        return tag;
+    }
+
+    private static String value(CompoundNBT tag) {
+        return tag == null ? null : tag.getString("value");
+    }
+
+    @Test
+    void tornTailIsTruncated() throws IOException {
+        RegionPlayerDataStorage storage = open();
+        storage.write(PLAYER_A, tag("a"));
+        storage.write(PLAYER_B, tag("b"));
+        storage.close();
+        long size = Files.size(data());
+        assertEquals(2L * RegionPlayerDataStorage.SECTOR_SIZE, size);
+
+        // 模拟写入中途崩溃: 记录头完整, 负载不足
+        try (FileChannel channel = FileChannel.open(data(), StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer torn = ByteBuffer.allocate(HEADER_SIZE + 100);
+            torn.putInt(RECORD_MAGIC)
+                    .putLong(PLAYER_C.getMostSignificantBits())
+                    .putLong(PLAYER_C.getLeastSignificantBits())
+                    .putInt(2000)
+                    .putInt(0);
+            torn.clear();
+            channel.write(torn);
+        }
+
+        storage = open();
+        assertEquals("a", value(storage.read(PLAYER_A)));
+        assertEquals("b", value(storage.read(PLAYER_B)));
+        assertNull(storage.read(PLAYER_C));
+        assertEquals(size, Files.size(data()));
+
+        storage.write(PLAYER_C, tag("c"));
+        storage.close();
+        storage = open();
+        assertEquals("c", value(storage.read(PLAYER_C)));
+        storage.close();
+    }
+
+    @Test
+    void corruptedRecordIsSkipped() throws IOException {
+        RegionPlayerDataStorage storage = open();
+        storage.write(PLAYER_A, tag("a"));
+        storage.write(PLAYER_B, tag("b"));
+        storage.write(PLAYER_C, tag("c"));
+        storage.close();
+        long size = Files.size(data());
+        // 不使用索引, 打开时逐条校验全部记录
+        Files.delete(dir.resolve("r.0.idx"));
+
+        // 损坏第二条记录的负载
+        try (FileChannel channel = FileChannel.open(data(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long position = RegionPlayerDataStorage.SECTOR_SIZE + HEADER_SIZE;
+            ByteBuffer b = ByteBuffer.allocate(1);
+            channel.read(b, position);
+            b.put(0, (byte) ~b.get(0));
+            b.clear();
+            channel.write(b, position);
+        }
+
+        storage = open();
+        assertEquals("a", value(storage.read(PLAYER_A)));
+        assertNull(storage.read(PLAYER_B));
+        assertEquals("c", value(storage.read(PLAYER_C)));
+        assertEquals(2, storage.list().size());
+        assertEquals(size, Files.size(data()));
+
+        // 损坏的扇区按失效扇区回收
+        assertEquals(1, storage.compact());
+        storage.close();
+        storage = open();
+        assertEquals("a", value(storage.read(PLAYER_A)));
+        assertEquals("c", value(storage.read(PLAYER_C)));
+        storage.close();
+    }
+
+    @Test
+    void compactionKeepsLatestRecords() throws IOException {
+        RegionPlayerDataStorage storage = open();
+        for (int i = 1; i <= 5; i++) {
+            storage.write(PLAYER_A, tag("a" + i));
+        }
+        storage.write(PLAYER_B, tag("b"));
+
+        assertEquals(4, storage.compact());
+        assertEquals(2L * RegionPlayerDataStorage.SECTOR_SIZE, Files.size(data()));
+        assertEquals("a5", value(storage.read(PLAYER_A)));
+        assertEquals("b", value(storage.read(PLAYER_B)));
+        assertEquals(0, storage.compact());
+
+        storage.write(PLAYER_B, tag("b2"));
+        storage.close();
+        storage = open();
+        assertEquals("a5", value(storage.read(PLAYER_A)));
+        assertEquals("b2", value(storage.read(PLAYER_B)));
+        storage.close();
+    }
+
+    @Test
+    void directoryChangeReopensRegion() throws IOException {
+        Path first = dir.resolve("first");
+        Path second = dir.resolve("second");
+        AtomicReference<Path> current = new AtomicReference<>(first);
+        RegionPlayerDataStorage storage = new RegionPlayerDataStorage(current::get, 1);
+        storage.write(PLAYER_A, tag("a"));
+
+        // 如单人游戏中切换存档, 不再沿用上一个目录中已打开的文件
+        current.set(second);
+        assertNull(storage.read(PLAYER_A));
+        storage.write(PLAYER_B, tag("b"));
+        assertEquals(1, storage.list().size());
+
+        current.set(first);
+        assertEquals("a", value(storage.read(PLAYER_A)));
+        assertNull(storage.read(PLAYER_B));
+        storage.close();
+
+        RegionPlayerDataStorage reopened = new RegionPlayerDataStorage(() -> second, 1);
+        assertEquals("b", value(reopened.read(PLAYER_B)));
+        assertNull(reopened.read(PLAYER_A));
+        reopened.close();
+    }
+}